@@ -109,7 +109,7 @@ const Home = ({ selectedTheme, toggleTheme }) => {
                     }}
                     onClick={async () => {
                         if (search) {
-                            const results = await API.search(search);
+                            const results = await API.search(search, 1);
                             if (results.length > 0) {
                                 window.location.href = results[0].where;
                             }
@@ -28,6 +28,10 @@ const getQueryStringObject = (queryString) => {
 
 const pageSize = 10;
 
+// results are fetched this many pages at a time, which the server finds much faster than every match,
+// and the next pages are fetched when paging past the last one that was
+const maxPages = 10;
+
 const Results = ({ selectedTheme, toggleTheme }) => {
     const location = useLocation();
     const navigate = useNavigate();
@@ -43,6 +47,12 @@ const Results = ({ selectedTheme, toggleTheme }) => {
 
     const [results, setResults] = useState([]);
     const [loading, setLoading] = useState(true);
+    const [limit, setLimit] = useState(
+        Math.ceil(Math.max(pageNum, 1) / maxPages) * maxPages * pageSize
+    );
+
+    // a fetch that filled its limit may have been cut off, so there is a page after the last one
+    const more = !loading && results.length === limit;
     const [page, setPage] = useState(() => {
         if (!loading && page * pageSize > results.length) {
             const searchParams = new URLSearchParams(location.search);
@@ -61,7 +71,7 @@ const Results = ({ selectedTheme, toggleTheme }) => {
 
     useEffect(() => {
         setLoading(true);
-        API.search(queryString.q).then((data) => {
+        API.search(queryString.q, limit).then((data) => {
             setResults(data);
             setLoading(false);
 
@@ -79,7 +89,7 @@ const Results = ({ selectedTheme, toggleTheme }) => {
             }
             
         });
-    }, []);
+    }, [limit]);
 
     function formatURL(url) {
         return url
@@ -141,11 +151,15 @@ const Results = ({ selectedTheme, toggleTheme }) => {
             )}
             <div className="w-full flex-shrink flex justify-center items-center">
                 <Pagination
-                    count={Math.trunc(results.length / pageSize)}
+                    count={Math.trunc(results.length / pageSize) + (more ? 1 : 0)}
                     page={page}
                     onChange={(e, v) => {
                         setPage(v);
 
+                        if (more && v * pageSize > results.length) {
+                            setLimit(limit + maxPages * pageSize);
+                        }
+
                         const searchParams = new URLSearchParams(
                             location.search
                         );
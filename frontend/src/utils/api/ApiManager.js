@@ -2,8 +2,8 @@ module.exports = () => {
     const URL = `${process.env.REACT_APP_API_URL}`;
 
     return {
-        search: async (query) => {
-            return await fetch(`${URL}/api/search?query=${query}`)
+        search: async (query, limit) => {
+            return await fetch(`${URL}/api/search?query=${query}${limit ? `&limit=${limit}` : ''}`)
                 .then(response => response.json())
                 .catch(error => console.error('Error:', error));;
         },
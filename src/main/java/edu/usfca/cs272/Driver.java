@@ -8,15 +8,23 @@ import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.function.Supplier;
 
 import edu.usfca.cs272.utils.ArgumentParser;
 import edu.usfca.cs272.utils.FileHandler;
 import edu.usfca.cs272.utils.InvertedIndex;
+import edu.usfca.cs272.utils.MultiReaderLock;
 import edu.usfca.cs272.utils.MultiThreadedFileHandler;
 import edu.usfca.cs272.utils.MultiThreadedInvertedIndex;
 import edu.usfca.cs272.utils.MultiThreadedQueryHandler;
 import edu.usfca.cs272.utils.QueryHandler;
 import edu.usfca.cs272.utils.QueryHandlerInterface;
+import edu.usfca.cs272.utils.ReaderBiasedLock;
+import edu.usfca.cs272.utils.ReducingFileHandler;
+import edu.usfca.cs272.utils.SealedInvertedIndex;
+import edu.usfca.cs272.utils.SegmentedInvertedIndex;
+import edu.usfca.cs272.utils.ShardedInvertedIndex;
+import edu.usfca.cs272.utils.SnapshotInvertedIndex;
 import edu.usfca.cs272.utils.WebCrawler;
 import edu.usfca.cs272.utils.WebServer;
 import edu.usfca.cs272.utils.WorkQueue;
@@ -67,6 +75,10 @@ public class Driver {
 		QueryHandlerInterface queryHandler;
 		FileHandler fileHandler;
 		WorkQueue workQueue;
+		SnapshotInvertedIndex snapshots = null;
+
+		boolean positions = !parser.hasFlag("-frequencies");
+		Supplier<MultiReaderLock> locks = parser.hasFlag("-biased") ? ReaderBiasedLock::new : MultiReaderLock::new;
 
 		if (parser.hasFlag("-threads") || parser.hasFlag("-html")) {
 			int threads = parser.getInteger("-threads", 5);
@@ -76,16 +88,50 @@ public class Driver {
 
 			workQueue = new WorkQueue(threads);
 
-			invertedIndex = new MultiThreadedInvertedIndex();
-			queryHandler = new MultiThreadedQueryHandler(invertedIndex, parser.hasFlag("-partial"), workQueue);
-			fileHandler = new MultiThreadedFileHandler((MultiThreadedInvertedIndex) invertedIndex, workQueue);
+			if (parser.hasFlag("-segments")) {
+				invertedIndex = new SegmentedInvertedIndex(workQueue, positions);
+			} else if (parser.hasFlag("-shards")) {
+				invertedIndex = new ShardedInvertedIndex(parser.getInteger("-shards", ShardedInvertedIndex.DEFAULT_SHARDS),
+						locks, positions);
+			} else if (parser.hasFlag("-snapshots")) {
+				snapshots = new SnapshotInvertedIndex(workQueue, locks,
+						parser.getInteger("-snapshots", SnapshotInvertedIndex.DEFAULT_BATCH), positions);
+				invertedIndex = snapshots;
+			} else {
+				invertedIndex = new MultiThreadedInvertedIndex(locks, positions);
+			}
+			if (parser.hasFlag("-reduce")) {
+				fileHandler = new ReducingFileHandler(invertedIndex, workQueue);
+			} else {
+				fileHandler = new MultiThreadedFileHandler(invertedIndex, workQueue);
+			}
 		} else {
-			invertedIndex = new InvertedIndex();
-			queryHandler = new QueryHandler(invertedIndex, parser.hasFlag("-partial"));
+			invertedIndex = new InvertedIndex(positions);
 			fileHandler = new FileHandler(invertedIndex);
 			workQueue = null;
 		}
 
+		if (parser.hasFlag("-load")) {
+			Path loadPath = parser.getPath("-load", Path.of("index.bin"));
+
+			try {
+				SealedInvertedIndex loaded = parser.hasFlag("-mmap") ? SealedInvertedIndex.mapBinary(loadPath)
+						: SealedInvertedIndex.readBinary(loadPath);
+
+				if (!parser.hasFlag("-text") && !parser.hasFlag("-html")) {
+					invertedIndex = loaded;
+				} else if (loaded.hasPositions() == invertedIndex.hasPositions()) {
+					invertedIndex.addIndex(loaded);
+				} else if (loaded.hasPositions()) {
+					System.out.println("The -load file keeps positions, so it can't be added to with -frequencies");
+				} else {
+					System.out.println("The -load file only keeps frequencies, so -frequencies is needed to add to it");
+				}
+			} catch (IOException io) {
+				System.out.println("IO Error with -load file");
+			}
+		}
+
 		if (parser.hasFlag("-text")) {
 			Path text = parser.getPath("-text");
 
@@ -107,7 +153,7 @@ public class Driver {
 					workQueue = new WorkQueue();
 				}
 
-				WebCrawler webCrawler = new WebCrawler((MultiThreadedInvertedIndex) invertedIndex, workQueue);
+				WebCrawler webCrawler = new WebCrawler(invertedIndex, workQueue);
 				try {
 					webCrawler.crawl(new URI(parser.getString("-html")), parser.getInteger("-crawl", 1));
 				} catch (URISyntaxException e) {
@@ -118,6 +164,34 @@ public class Driver {
 			}
 		}
 
+		if (snapshots != null) {
+			snapshots.publish();
+		}
+
+		if (parser.hasFlag("-seal")) {
+			invertedIndex = invertedIndex.seal();
+		}
+
+		if (parser.hasFlag("-save")) {
+			Path savePath = parser.getPath("-save", Path.of("index.bin"));
+
+			try {
+				invertedIndex.writeBinary(savePath);
+			} catch (IOException io) {
+				System.out.println("IO Error with -save file");
+			}
+		}
+
+		int fuzzy = parser.hasFlag("-fuzzy") ? Math.max(1, Math.min(2, parser.getInteger("-fuzzy", 1))) : 0;
+
+		if (workQueue != null) {
+			queryHandler = new MultiThreadedQueryHandler(invertedIndex, parser.hasFlag("-partial"), workQueue, locks,
+					parser.hasFlag("-bm25"), fuzzy, parser.hasFlag("-syntax"));
+		} else {
+			queryHandler = new QueryHandler(invertedIndex, parser.hasFlag("-partial"), parser.hasFlag("-bm25"), fuzzy,
+					parser.hasFlag("-syntax"));
+		}
+
 		if (parser.hasFlag("-query")) {
 			Path queryPath = parser.getPath("-query");
 
@@ -170,6 +244,8 @@ public class Driver {
 				System.out.println("The -index flag is missing a necessary path value.");
 			} catch (IOException io) {
 				System.out.println("IO Error with -index flag");
+			} catch (UnsupportedOperationException e) {
+				System.out.println("The -index flag needs positions, which -frequencies doesn't keep");
 			}
 		}
 
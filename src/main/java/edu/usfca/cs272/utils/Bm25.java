@@ -0,0 +1,101 @@
+package edu.usfca.cs272.utils;
+
+/**
+ * The document length norms of an index for Okapi BM25 scoring. A word adds
+ *
+ * <pre>
+ * idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * words / averageWords))
+ * </pre>
+ *
+ * to the score of every document it is in, where the idf is higher for rarer
+ * words. The norm at the end only depends on the document, so it is worked out
+ * once for every document and kept in an array, and scoring a posting is a
+ * couple of multiply-adds.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class Bm25 {
+
+     /**
+      * how quickly more of the same word stops adding to the score
+      */
+     public static final double K1 = 1.2;
+
+     /**
+      * how much longer documents are held back
+      */
+     public static final double B = 0.75;
+
+     /**
+      * the norm of each document
+      */
+     private final double[] norms;
+
+     /**
+      * the average word count of a document
+      */
+     private final double averageWords;
+
+     /**
+      * Works out the norms of every document in an index
+      *
+      * @param index the index
+      */
+     public Bm25(InvertedIndex index) {
+          norms = new double[index.getDocumentCount()];
+
+          long total = 0;
+          for (int document = 0; document < norms.length; document++) {
+               total += index.getDocumentWords(document);
+          }
+          averageWords = Math.max(1, (double) total / Math.max(1, norms.length));
+
+          for (int document = 0; document < norms.length; document++) {
+               norms[document] = K1 * (1 - B + B * index.getDocumentWords(document) / averageWords);
+          }
+     }
+
+     /**
+      * Gets the idf of a word
+      *
+      * @param documents the number of documents in the index
+      * @param frequency the number of documents the word is in
+      * @return the idf, which is never negative
+      */
+     public static double idf(int documents, int frequency) {
+          return Math.log(1 + (documents - frequency + 0.5) / (frequency + 0.5));
+     }
+
+     /**
+      * Scores a word in a document
+      *
+      * @param idf       the idf of the word
+      * @param frequency the number of times the word is in the document
+      * @param document  the document id
+      * @return the score
+      */
+     public double score(double idf, int frequency, int document) {
+          return idf * frequency * (K1 + 1) / (frequency + norms[document]);
+     }
+
+     /**
+      * Gets the highest score a word can give a document from the highest
+      * frequency over word count it has in any of them. Leaving out the part of
+      * the norm that doesn't grow with the word count only makes the score
+      * bigger, and what is left only grows with the ratio, so this is never less
+      * than the real score.
+      *
+      * @param idf   the idf of the word
+      * @param ratio the highest frequency over word count, like
+      *              {@link PostingsCursor#blockMaxScore()}
+      * @return the highest score
+      */
+     public double bound(double idf, double ratio) {
+          if (Double.isInfinite(ratio)) {
+               return Double.POSITIVE_INFINITY;
+          }
+          return idf * (K1 + 1) * ratio / (ratio + K1 * B / averageWords);
+     }
+}
@@ -0,0 +1,764 @@
+package edu.usfca.cs272.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * A query line with the operators {@code AND}, {@code OR} and {@code NOT} and
+ * parentheses for grouping, like {@code (apple OR banana) AND NOT cherry}.
+ * {@code NOT} binds the tightest and {@code OR} the loosest, and words next to
+ * each other without an operator are joined with {@code OR}, like every other
+ * query. The operators have to be in capital letters, and a line without any
+ * operators or parentheses is a plain query.
+ *
+ * <p>
+ * Each part of the query becomes a {@link PostingsCursor} over the documents it
+ * matches, so the whole query is walked one document at a time. An
+ * {@code AND} steps its parts forward together from the rarest one, skipping
+ * to the next document that part has instead of reading every posting of the
+ * others, so it costs about as much as its rarest part. A document scores like
+ * the exact search would if only the matched words counted, and documents
+ * without any matched words, which only a {@code NOT} can match, are left out.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class BooleanQuery implements ParsedQuery {
+
+     /**
+      * the pattern of a single token, which is a parenthesis or a run of anything
+      * else up to a space or parenthesis
+      */
+     public static final Pattern TOKEN_REGEX = Pattern.compile("[()]|[^\\s()]+");
+
+     /**
+      * the pattern of a line with boolean syntax
+      */
+     public static final Pattern BOOLEAN_REGEX = Pattern.compile("[()]|\\b(AND|OR|NOT)\\b");
+
+     /**
+      * the parsed query
+      */
+     private final Node root;
+
+     /**
+      * Creates a boolean query
+      *
+      * @param root the parsed query
+      */
+     private BooleanQuery(Node root) {
+          this.root = root;
+     }
+
+     /**
+      * Parses a query line if it has boolean syntax. The parsing is forgiving, so
+      * a missing closing parenthesis is added at the end and operators without
+      * anything to work on are left out.
+      *
+      * @param line    the query line
+      * @param stemmer the stemmer
+      * @return the query, or null if the line has no boolean syntax or no words
+      */
+     public static BooleanQuery parse(String line, Stemmer stemmer) {
+          if (!BOOLEAN_REGEX.matcher(line).find()) {
+               return null;
+          }
+
+          List<String> tokens = new ArrayList<>();
+          Matcher matcher = TOKEN_REGEX.matcher(line);
+          while (matcher.find()) {
+               tokens.add(matcher.group());
+          }
+
+          Parser parser = new Parser(tokens, stemmer);
+          Node root = parser.parseOr();
+          while (parser.hasNext()) {
+               parser.next();
+               Node rest = parser.parseOr();
+               root = Node.combine(Or::new, root, rest);
+          }
+
+          return root != null ? new BooleanQuery(root) : null;
+     }
+
+     @Override
+     public List<QueryEntry> search(InvertedIndex index, boolean partial, int limit) {
+          return index.booleanSearch(this, partial, limit);
+     }
+
+     /**
+      * Creates a cursor over the documents that match the query
+      *
+      * @param index   the index
+      * @param partial whether words also match the words they are a prefix of
+      * @return the cursor, whose frequency is the number of matched words
+      */
+     public PostingsCursor cursor(InvertedIndex index, boolean partial) {
+          return root.cursor(index, partial);
+     }
+
+     /**
+      * Gets the key of the query in the query results, which has the stems and
+      * only the parentheses that are needed
+      *
+      * @return the key
+      */
+     @Override
+     public String toString() {
+          return root.toString();
+     }
+
+     /**
+      * A recursive descent parser over the tokens of a line
+      */
+     private static class Parser {
+          /**
+           * the tokens
+           */
+          private final List<String> tokens;
+
+          /**
+           * the stemmer
+           */
+          private final Stemmer stemmer;
+
+          /**
+           * the index of the next token
+           */
+          private int next;
+
+          /**
+           * Creates a parser
+           *
+           * @param tokens  the tokens
+           * @param stemmer the stemmer
+           */
+          private Parser(List<String> tokens, Stemmer stemmer) {
+               this.tokens = tokens;
+               this.stemmer = stemmer;
+               this.next = 0;
+          }
+
+          /**
+           * Checks whether there are tokens left
+           *
+           * @return true if there are tokens left
+           */
+          private boolean hasNext() {
+               return next < tokens.size();
+          }
+
+          /**
+           * Moves past the next token
+           *
+           * @return the token
+           */
+          private String next() {
+               return tokens.get(next++);
+          }
+
+          /**
+           * Checks whether the next token is the given one
+           *
+           * @param token the token
+           * @return true if the next token is the given one
+           */
+          private boolean peek(String token) {
+               return hasNext() && tokens.get(next).equals(token);
+          }
+
+          /**
+           * Parses parts joined by {@code OR} or by nothing, up to a closing
+           * parenthesis or the end
+           *
+           * @return the node, or null if there are no words
+           */
+          private Node parseOr() {
+               Node node = null;
+               while (hasNext() && !peek(")")) {
+                    if (peek("OR") || peek("AND")) {
+                         next();
+                         continue;
+                    }
+                    node = Node.combine(Or::new, node, parseAnd());
+               }
+               return node;
+          }
+
+          /**
+           * Parses parts joined by {@code AND}
+           *
+           * @return the node, or null if there are no words
+           */
+          private Node parseAnd() {
+               Node node = parseNot();
+               while (peek("AND")) {
+                    next();
+                    if (hasNext() && !peek(")") && !peek("OR") && !peek("AND")) {
+                         node = Node.combine(And::new, node, parseNot());
+                    }
+               }
+               return node;
+          }
+
+          /**
+           * Parses a part with any number of {@code NOT} in front of it
+           *
+           * @return the node, or null if there are no words
+           */
+          private Node parseNot() {
+               if (peek("NOT")) {
+                    next();
+                    Node node = hasNext() && !peek(")") && !peek("OR") && !peek("AND") ? parseNot() : null;
+                    return node != null ? new Not(node) : null;
+               }
+               return parsePrimary();
+          }
+
+          /**
+           * Parses a group in parentheses or a single word
+           *
+           * @return the node, or null if there are no words
+           */
+          private Node parsePrimary() {
+               String token = next();
+               if (token.equals("(")) {
+                    Node node = parseOr();
+                    if (peek(")")) {
+                         next();
+                    }
+                    return node;
+               }
+
+               List<String> stems = FileStemmer.listStems(token, stemmer);
+               return stems.isEmpty() ? null : new Word(stems.get(0));
+          }
+     }
+
+     /**
+      * A part of a parsed query
+      */
+     private abstract static class Node {
+          /**
+           * Creates a cursor over the documents that match this part
+           *
+           * @param index   the index
+           * @param partial whether words also match the words they are a prefix of
+           * @return the cursor
+           */
+          abstract PostingsCursor cursor(InvertedIndex index, boolean partial);
+
+          /**
+           * Gets this part as a child of another operator, in parentheses if it has
+           * operators of its own
+           *
+           * @return the text
+           */
+          String toChildString() {
+               return toString();
+          }
+
+          /**
+           * Joins two parts with an operator, leaving out the parts without words
+           * and merging into the operator if the first part already is one
+           *
+           * @param operator creates the operator
+           * @param first    the first part
+           * @param second   the second part
+           * @return the joined part
+           */
+          static Node combine(Function<List<Node>, Operator> operator, Node first, Node second) {
+               if (first == null || second == null) {
+                    return first != null ? first : second;
+               }
+
+               Operator joined = operator.apply(new ArrayList<>());
+               if (first.getClass() == joined.getClass()) {
+                    joined = (Operator) first;
+               } else {
+                    joined.children.add(first);
+               }
+               joined.children.add(second);
+               return joined;
+          }
+     }
+
+     /**
+      * A single stemmed word
+      */
+     private static class Word extends Node {
+          /**
+           * the stem
+           */
+          private final String stem;
+
+          /**
+           * Creates a word
+           *
+           * @param stem the stem
+           */
+          private Word(String stem) {
+               this.stem = stem;
+          }
+
+          @Override
+          PostingsCursor cursor(InvertedIndex index, boolean partial) {
+               if (!partial) {
+                    PostingsCursor postings = index.getPostings(stem);
+                    return postings != null ? postings : new UnionCursor(new PostingsCursor[0]);
+               }
+
+               List<PostingsCursor> words = new ArrayList<>();
+               index.forEachWord(stem, (word, postings) -> words.add(postings));
+               return words.size() == 1 ? words.get(0) : new UnionCursor(words.toArray(PostingsCursor[]::new));
+          }
+
+          @Override
+          public String toString() {
+               return stem;
+          }
+     }
+
+     /**
+      * A part with {@code NOT} in front of it
+      */
+     private static class Not extends Node {
+          /**
+           * the part
+           */
+          private final Node child;
+
+          /**
+           * Creates a negated part
+           *
+           * @param child the part
+           */
+          private Not(Node child) {
+               this.child = child;
+          }
+
+          @Override
+          PostingsCursor cursor(InvertedIndex index, boolean partial) {
+               PostingsCursor[] all = { new AllCursor(index.getDocumentCount()) };
+               return new IntersectionCursor(all, new PostingsCursor[] { child.cursor(index, partial) });
+          }
+
+          @Override
+          public String toString() {
+               return "NOT " + child.toChildString();
+          }
+     }
+
+     /**
+      * An operator over several parts
+      */
+     private abstract static class Operator extends Node {
+          /**
+           * the parts
+           */
+          final List<Node> children;
+
+          /**
+           * Creates an operator
+           *
+           * @param children the parts
+           */
+          Operator(List<Node> children) {
+               this.children = children;
+          }
+
+          /**
+           * Gets the operator between the parts
+           *
+           * @return the operator
+           */
+          abstract String operator();
+
+          @Override
+          String toChildString() {
+               return "(" + this + ")";
+          }
+
+          @Override
+          public String toString() {
+               StringBuilder builder = new StringBuilder();
+               for (Node child : children) {
+                    if (builder.length() > 0) {
+                         builder.append(' ').append(operator()).append(' ');
+                    }
+                    builder.append(child instanceof Or && this instanceof And ? child.toChildString() : child.toString());
+               }
+               return builder.toString();
+          }
+     }
+
+     /**
+      * Parts joined by {@code AND}
+      */
+     private static class And extends Operator {
+          /**
+           * Creates an {@code AND}
+           *
+           * @param children the parts
+           */
+          private And(List<Node> children) {
+               super(children);
+          }
+
+          /**
+           * The parts with {@code NOT} in front of them only rule documents out, so
+           * they are checked against the documents the other parts match instead of
+           * being walked on their own
+           */
+          @Override
+          PostingsCursor cursor(InvertedIndex index, boolean partial) {
+               List<PostingsCursor> required = new ArrayList<>();
+               List<PostingsCursor> excluded = new ArrayList<>();
+
+               for (Node child : children) {
+                    if (child instanceof Not) {
+                         excluded.add(((Not) child).child.cursor(index, partial));
+                    } else {
+                         required.add(child.cursor(index, partial));
+                    }
+               }
+
+               if (required.isEmpty()) {
+                    required.add(new AllCursor(index.getDocumentCount()));
+               }
+
+               return new IntersectionCursor(required.toArray(PostingsCursor[]::new),
+                         excluded.toArray(PostingsCursor[]::new));
+          }
+
+          @Override
+          String operator() {
+               return "AND";
+          }
+     }
+
+     /**
+      * Parts joined by {@code OR}
+      */
+     private static class Or extends Operator {
+          /**
+           * Creates an {@code OR}
+           *
+           * @param children the parts
+           */
+          private Or(List<Node> children) {
+               super(children);
+          }
+
+          @Override
+          PostingsCursor cursor(InvertedIndex index, boolean partial) {
+               PostingsCursor[] cursors = new PostingsCursor[children.size()];
+               for (int i = 0; i < cursors.length; i++) {
+                    cursors[i] = children.get(i).cursor(index, partial);
+               }
+               return new UnionCursor(cursors);
+          }
+
+          @Override
+          String operator() {
+               return "OR";
+          }
+     }
+
+     /**
+      * A cursor over the documents that match part of a query, which has no
+      * positions
+      */
+     private abstract static class MatchCursor implements PostingsCursor {
+          @Override
+          public PositionList positions() {
+               throw new UnsupportedOperationException("Boolean matches have no positions");
+          }
+     }
+
+     /**
+      * A cursor over every document, with no matched words
+      */
+     private static class AllCursor extends MatchCursor {
+          /**
+           * the number of documents
+           */
+          private final int size;
+
+          /**
+           * the current document
+           */
+          private int document;
+
+          /**
+           * Creates a cursor over every document
+           *
+           * @param size the number of documents
+           */
+          private AllCursor(int size) {
+               this.size = size;
+               this.document = -1;
+          }
+
+          @Override
+          public boolean next() {
+               return ++document < size;
+          }
+
+          @Override
+          public boolean advance(int target) {
+               document = Math.max(document + 1, target);
+               return document < size;
+          }
+
+          @Override
+          public int document() {
+               return document;
+          }
+
+          @Override
+          public int frequency() {
+               return 0;
+          }
+
+          @Override
+          public int size() {
+               return size;
+          }
+     }
+
+     /**
+      * A cursor over the documents that every required cursor has and no excluded
+      * cursor has. The required cursors take turns setting the target from the
+      * rarest one, and each skips straight to it, so the cost follows the rarest
+      * cursor instead of the longest.
+      */
+     private static class IntersectionCursor extends MatchCursor {
+          /**
+           * the required cursors, rarest first
+           */
+          private final PostingsCursor[] required;
+
+          /**
+           * the current document of each required cursor after the rarest one, or
+           * -1 before the first and {@link Integer#MAX_VALUE} after the last
+           */
+          private final int[] requiredDocuments;
+
+          /**
+           * the excluded cursors
+           */
+          private final PostingsCursor[] excluded;
+
+          /**
+           * the current document of each excluded cursor, or -1 before the first
+           * and {@link Integer#MAX_VALUE} after the last
+           */
+          private final int[] excludedDocuments;
+
+          /**
+           * the current document
+           */
+          private int document;
+
+          /**
+           * Creates an intersection
+           *
+           * @param required the required cursors
+           * @param excluded the excluded cursors
+           */
+          private IntersectionCursor(PostingsCursor[] required, PostingsCursor[] excluded) {
+               this.required = required.clone();
+               Arrays.sort(this.required, Comparator.comparingInt(PostingsCursor::size));
+               this.requiredDocuments = new int[required.length];
+               Arrays.fill(requiredDocuments, -1);
+               this.excluded = excluded;
+               this.excludedDocuments = new int[excluded.length];
+               Arrays.fill(excludedDocuments, -1);
+               this.document = -1;
+          }
+
+          @Override
+          public boolean next() {
+               return document != Integer.MAX_VALUE && required[0].next() && align();
+          }
+
+          @Override
+          public boolean advance(int target) {
+               return document != Integer.MAX_VALUE && required[0].advance(target) && align();
+          }
+
+          /**
+           * Moves every required cursor forward to the first document they all have
+           * at or after the current document of the rarest one, and keeps going if
+           * an excluded cursor has it
+           *
+           * @return false if there are no more documents
+           */
+          private boolean align() {
+               int target = required[0].document();
+               int i = 1;
+
+               while (true) {
+                    if (i == required.length) {
+                         if (!isExcluded(target)) {
+                              document = target;
+                              return true;
+                         }
+                         if (!required[0].next()) {
+                              break;
+                         }
+                         target = required[0].document();
+                         i = 1;
+                         continue;
+                    }
+
+                    if (requiredDocuments[i] < target) {
+                         requiredDocuments[i] = required[i].advance(target) ? required[i].document() : Integer.MAX_VALUE;
+                    }
+
+                    if (requiredDocuments[i] == Integer.MAX_VALUE) {
+                         break;
+                    }
+
+                    if (requiredDocuments[i] > target) {
+                         if (!required[0].advance(requiredDocuments[i])) {
+                              break;
+                         }
+                         target = required[0].document();
+                         i = 1;
+                    } else {
+                         i++;
+                    }
+               }
+
+               document = Integer.MAX_VALUE;
+               return false;
+          }
+
+          /**
+           * Checks whether an excluded cursor has a document
+           *
+           * @param target the document
+           * @return true if an excluded cursor has it
+           */
+          private boolean isExcluded(int target) {
+               for (int i = 0; i < excluded.length; i++) {
+                    if (excludedDocuments[i] < target) {
+                         excludedDocuments[i] = excluded[i].advance(target) ? excluded[i].document() : Integer.MAX_VALUE;
+                    }
+                    if (excludedDocuments[i] == target) {
+                         return true;
+                    }
+               }
+               return false;
+          }
+
+          @Override
+          public int document() {
+               return document;
+          }
+
+          @Override
+          public int frequency() {
+               int frequency = 0;
+               for (PostingsCursor cursor : required) {
+                    frequency += cursor.frequency();
+               }
+               return frequency;
+          }
+
+          @Override
+          public int size() {
+               return required[0].size();
+          }
+     }
+
+     /**
+      * A cursor over the documents that any of its cursors has
+      */
+     private static class UnionCursor extends MatchCursor {
+          /**
+           * the cursors
+           */
+          private final PostingsCursor[] cursors;
+
+          /**
+           * the current document of each cursor, or -1 before the first and
+           * {@link Integer#MAX_VALUE} after the last
+           */
+          private final int[] documents;
+
+          /**
+           * the current document
+           */
+          private int document;
+
+          /**
+           * Creates a union
+           *
+           * @param cursors the cursors
+           */
+          private UnionCursor(PostingsCursor[] cursors) {
+               this.cursors = cursors;
+               this.documents = new int[cursors.length];
+               Arrays.fill(documents, -1);
+               this.document = -1;
+          }
+
+          @Override
+          public boolean next() {
+               return advance(document + 1);
+          }
+
+          @Override
+          public boolean advance(int target) {
+               if (document == Integer.MAX_VALUE) {
+                    return false;
+               }
+
+               document = Integer.MAX_VALUE;
+               for (int i = 0; i < cursors.length; i++) {
+                    if (documents[i] < target) {
+                         documents[i] = cursors[i].advance(target) ? cursors[i].document() : Integer.MAX_VALUE;
+                    }
+                    document = Math.min(document, documents[i]);
+               }
+               return document != Integer.MAX_VALUE;
+          }
+
+          @Override
+          public int document() {
+               return document;
+          }
+
+          @Override
+          public int frequency() {
+               int frequency = 0;
+               for (int i = 0; i < cursors.length; i++) {
+                    if (documents[i] == document) {
+                         frequency += cursors[i].frequency();
+                    }
+               }
+               return frequency;
+          }
+
+          @Override
+          public int size() {
+               int size = 0;
+               for (PostingsCursor cursor : cursors) {
+                    size += cursor.size();
+               }
+               return size;
+          }
+     }
+}
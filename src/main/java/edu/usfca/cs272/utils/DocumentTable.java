@@ -0,0 +1,135 @@
+package edu.usfca.cs272.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Class responsible for giving each location (file path or URL) a dense int
+ * document id and keeping the word count of every document in a primitive
+ * array indexed by that id
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class DocumentTable {
+
+     /**
+      * the initial capacity of the arrays
+      */
+     private static final int INITIAL_CAPACITY = 16;
+
+     /**
+      * the lookup from location to document id
+      */
+     private final HashMap<String, Integer> ids;
+
+     /**
+      * the locations indexed by document id
+      */
+     private String[] locations;
+
+     /**
+      * the word counts indexed by document id
+      */
+     private int[] counts;
+
+     /**
+      * the number of documents
+      */
+     private int size;
+
+     /**
+      * Creates an empty document table
+      */
+     public DocumentTable() {
+          ids = new HashMap<>();
+          locations = new String[INITIAL_CAPACITY];
+          counts = new int[INITIAL_CAPACITY];
+          size = 0;
+     }
+
+     /**
+      * Gets the id of a location, adding the location if it isn't in the table yet
+      *
+      * @param location the location
+      * @return the document id
+      */
+     public int add(String location) {
+          Integer id = ids.get(location);
+
+          if (id == null) {
+               if (size == locations.length) {
+                    int capacity = size + (size >> 1);
+                    locations = Arrays.copyOf(locations, capacity);
+                    counts = Arrays.copyOf(counts, capacity);
+               }
+
+               id = size++;
+               locations[id] = location;
+               ids.put(location, id);
+          }
+
+          return id;
+     }
+
+     /**
+      * Gets the id of a location
+      *
+      * @param location the location
+      * @return the document id or -1 if the location isn't in the table
+      */
+     public int getId(String location) {
+          Integer id = ids.get(location);
+          return id != null ? id : -1;
+     }
+
+     /**
+      * Gets the location of a document
+      *
+      * @param id the document id
+      * @return the location
+      */
+     public String getLocation(int id) {
+          return locations[id];
+     }
+
+     /**
+      * Gets the word count of a document
+      *
+      * @param id the document id
+      * @return the word count
+      */
+     public int getCount(int id) {
+          return counts[id];
+     }
+
+     /**
+      * Adds to the word count of a document
+      *
+      * @param id    the document id
+      * @param words the amount of words to add
+      */
+     public void addCount(int id, int words) {
+          counts[id] += words;
+     }
+
+     /**
+      * Checks whether a location is in the table
+      *
+      * @param location the location
+      * @return whether the location has a document id
+      */
+     public boolean contains(String location) {
+          return ids.containsKey(location);
+     }
+
+     /**
+      * Gets the number of documents
+      *
+      * @return the number of documents
+      */
+     public int size() {
+          return size;
+     }
+}
@@ -1,14 +1,17 @@
 package edu.usfca.cs272.utils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import opennlp.tools.stemmer.Stemmer;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
 
 /**
  * Class responsible for filling the InvertedIndex
@@ -19,6 +22,11 @@ import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
  */
 public class FileHandler {
 
+     /**
+      * the most bytes of a file read at a time
+      */
+     public static final int CHUNK_SIZE = 1 << 18;
+
      /**
       * private InvertedIndex
       */
@@ -78,27 +86,137 @@ public class FileHandler {
 
      /**
       * Adds a file to the index. This is called by the IndexWriter when it detects a
-      * stem file that is to be added to the index
+      * stem file that is to be added to the index.
       * 
       * @param file          - the path to the
       * @param invertedIndex - the inverted index
       * @throws IOException an IO exception
+      * @see #handleRange(FileChannel, long, long, String, InvertedIndex, int)
       */
      public static void handleFile(Path file, InvertedIndex invertedIndex) throws IOException {
-          try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
-               String line = null;
-               SnowballStemmer stemmer = new SnowballStemmer(ENGLISH);
-               int i = 1;
-               String fileString = file.toString();
+          try (FileChannel channel = FileChannel.open(file)) {
+               handleRange(channel, 0, channel.size(), file.toString(), invertedIndex, 1);
+          }
+     }
+
+     /**
+      * Adds the words in a range of bytes of a file to the index. The range is
+      * read and decoded {@link #CHUNK_SIZE} bytes at a time, and each chunk is
+      * split up to its last line break, so words are numbered just like reading
+      * the file line by line without ever making a string of a line. A range has
+      * to start at the start of a line.
+      * 
+      * @param channel       the file, which is only read with absolute positions
+      *                      so it can be shared
+      * @param start         the first byte of the range
+      * @param end           the byte after the range
+      * @param location      the location of the file in the index
+      * @param invertedIndex the inverted index, or null to only count the words
+      * @param position      the position of the first word in the range
+      * @return the position after the last word in the range
+      * @throws IOException an IO exception
+      */
+     public static int handleRange(FileChannel channel, long start, long end, String location,
+               InvertedIndex invertedIndex, int position) throws IOException {
+          int size = (int) Math.max(16, Math.min(CHUNK_SIZE, end - start));
+          ByteBuffer bytes = ByteBuffer.allocate(size);
+          CharBuffer chars = CharBuffer.allocate(size);
+          CharsetDecoder decoder = UTF_8.newDecoder();
+
+          Stemmer stemmer = StemCache.SHARED;
+          Tokenizer words = new Tokenizer(true);
+          int i = position;
+          long offset = start;
+          boolean ended = false;
+          boolean last = false;
+
+          while (!last) {
+               if (!ended) {
+                    bytes.limit((int) Math.min(bytes.capacity(), bytes.position() + end - offset));
+                    int read = channel.read(bytes, offset);
+                    if (read > 0) {
+                         offset += read;
+                    }
+                    ended = read < 0 || offset >= end;
+               }
+
+               bytes.flip();
+               CoderResult result = decoder.decode(bytes, chars, ended);
+               bytes.compact();
+               if (result.isError()) {
+                    result.throwException();
+               }
+
+               last = ended && result.isUnderflow();
+               chars.flip();
+               int stop = last ? chars.limit() : lineEnd(chars);
+               words.reset(chars.subSequence(0, stop));
+
+               if (invertedIndex == null) {
+                    while (words.next()) {
+                         i++;
+                    }
+               } else {
+                    while (words.next()) {
+                         invertedIndex.addIndex(stemmer.stem(words.token()).toString(), location, i++);
+                    }
+               }
+
+               chars.position(stop);
+               chars.compact();
+               if (!chars.hasRemaining()) {
+                    chars = CharBuffer.allocate(chars.capacity() * 2).put(chars.flip());
+               }
+          }
+
+          return i;
+     }
+
+     /**
+      * Finds the start of the first line after a byte of a file
+      * 
+      * @param channel the file
+      * @param offset  the byte
+      * @return the byte after the first line break at or after the offset, or
+      *         the size of the file if there isn't one
+      * @throws IOException an IO exception
+      */
+     public static long lineStart(FileChannel channel, long offset) throws IOException {
+          ByteBuffer bytes = ByteBuffer.allocate(1 << 12);
+          long size = channel.size();
 
-               while ((line = reader.readLine()) != null) {
-                    String[] parsedLine = FileStemmer.parse(line);
+          while (offset < size) {
+               bytes.clear();
+               int read = channel.read(bytes, offset);
+               if (read < 0) {
+                    break;
+               }
 
-                    for (String word : parsedLine) {
-                         invertedIndex.addIndex(stemmer.stem(word).toString(), fileString, i++);
+               for (int i = 0; i < read; i++) {
+                    byte b = bytes.get(i);
+                    if (b == '\n' || b == '\r') {
+                         return offset + i + 1;
                     }
                }
+               offset += read;
+          }
+          return size;
+     }
+
+     /**
+      * Finds the end of the last line break in some chars
+      * 
+      * @param chars the chars
+      * @return the offset after the last line break, or 0 if there isn't one
+      */
+     private static int lineEnd(CharBuffer chars) {
+          for (int i = chars.limit() - 1; i >= 0; i--) {
+               char c = chars.get(i);
+               if (c == '\n' || c == '\r') {
+                    return i + 1;
+               }
           }
+          return 0;
      }
 
      /**
@@ -83,8 +83,9 @@ public class FileStemmer {
 	 * @see Collection#add(Object)
 	 */
 	public static void addStems(String line, Stemmer stemmer, Collection<String> stems) {
-		for (String word : parse(line)) {
-			stems.add(stemmer.stem(word).toString());
+		Tokenizer words = new Tokenizer(line);
+		while (words.next()) {
+			stems.add(stemmer.stem(words.token()).toString());
 		}
 	}
 
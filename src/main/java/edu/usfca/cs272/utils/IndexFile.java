@@ -0,0 +1,372 @@
+package edu.usfca.cs272.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered reading and writing of the binary index file format through a
+ * {@link FileChannel}. The layout of the file is:
+ *
+ * <pre>
+ * file       := magic:int version:int flags:int documents words postings
+ * documents  := count:int (location:string words:int)*
+ * words      := count:int (word:string offset:int maxScore:double)*
+ * postings   := length:int byte*
+ * string     := length:int utf8-byte*
+ * </pre>
+ *
+ * All ints and doubles are big-endian and the postings bytes are exactly the compressed
+ * postings of a {@link SealedInvertedIndex}, so loading a file doesn't need to
+ * decode or rebuild anything. Every count and length is checked against what
+ * is left of the file before anything is allocated for it, so a damaged file
+ * is an {@link IOException} instead of a huge allocation.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class IndexFile implements Closeable {
+
+     /**
+      * the magic number at the start of every index file
+      */
+     public static final int MAGIC = 0x4B534958;
+
+     /**
+      * the current version of the file format
+      */
+     public static final int VERSION = 2;
+
+     /**
+      * the flag for an index that only keeps frequencies
+      */
+     public static final int FREQUENCIES_ONLY = 1;
+
+     /**
+      * the size of the buffer between the program and the channel
+      */
+     private static final int BUFFER_SIZE = 1 << 16;
+
+     /**
+      * the channel
+      */
+     private final FileChannel channel;
+
+     /**
+      * the buffer
+      */
+     private final ByteBuffer buffer;
+
+     /**
+      * whether the file is being written
+      */
+     private final boolean writing;
+
+     /**
+      * the flags of the index
+      */
+     private int flags;
+
+     /**
+      * Opens an index file
+      *
+      * @param channel the channel
+      * @param writing whether the file is being written
+      */
+     private IndexFile(FileChannel channel, boolean writing) {
+          this.channel = channel;
+          this.writing = writing;
+          this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+          if (!writing) {
+               buffer.flip();
+          }
+     }
+
+     /**
+      * Creates or replaces an index file and writes the header
+      *
+      * @param path  the path
+      * @param flags the flags of the index
+      * @return the index file
+      * @throws IOException an IO exception
+      */
+     public static IndexFile create(Path path, int flags) throws IOException {
+          IndexFile file = new IndexFile(FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), true);
+          file.flags = flags;
+          file.writeInt(MAGIC);
+          file.writeInt(VERSION);
+          file.writeInt(flags);
+          return file;
+     }
+
+     /**
+      * Opens an index file and checks the header
+      *
+      * @param path the path
+      * @return the index file
+      * @throws IOException if the file isn't an index file or has a different
+      *                     version
+      */
+     public static IndexFile open(Path path) throws IOException {
+          IndexFile file = new IndexFile(FileChannel.open(path, StandardOpenOption.READ), false);
+          try {
+               if (file.readInt() != MAGIC) {
+                    throw new IOException(path + " is not an index file");
+               }
+
+               int version = file.readInt();
+               if (version != VERSION) {
+                    throw new IOException(path + " has index file version " + version + " but version "
+                              + VERSION + " is needed");
+               }
+
+               file.flags = file.readInt();
+          } catch (IOException e) {
+               file.close();
+               throw e;
+          }
+          return file;
+     }
+
+     /**
+      * Gets the flags of the index
+      *
+      * @return the flags
+      */
+     public int getFlags() {
+          return flags;
+     }
+
+     /**
+      * Writes an int
+      *
+      * @param value the int
+      * @throws IOException an IO exception
+      */
+     public void writeInt(int value) throws IOException {
+          if (buffer.remaining() < Integer.BYTES) {
+               flush();
+          }
+          buffer.putInt(value);
+     }
+
+     /**
+      * Writes a double
+      *
+      * @param value the double
+      * @throws IOException an IO exception
+      */
+     public void writeDouble(double value) throws IOException {
+          if (buffer.remaining() < Double.BYTES) {
+               flush();
+          }
+          buffer.putDouble(value);
+     }
+
+     /**
+      * Writes a string as its UTF-8 length and bytes
+      *
+      * @param value the string
+      * @throws IOException an IO exception
+      */
+     public void writeString(String value) throws IOException {
+          byte[] bytes = value.getBytes(UTF_8);
+          writeInt(bytes.length);
+          writeBytes(ByteBuffer.wrap(bytes));
+     }
+
+     /**
+      * Writes all of the bytes of a buffer, from its start to its capacity
+      *
+      * @param bytes the bytes
+      * @throws IOException an IO exception
+      */
+     public void writeBytes(ByteBuffer bytes) throws IOException {
+          ByteBuffer source = bytes.duplicate();
+          source.clear();
+
+          if (source.remaining() > buffer.remaining()) {
+               flush();
+               while (source.hasRemaining()) {
+                    channel.write(source);
+               }
+          } else {
+               buffer.put(source);
+          }
+     }
+
+     /**
+      * Reads an int
+      *
+      * @return the int
+      * @throws IOException an IO exception
+      */
+     public int readInt() throws IOException {
+          fill(Integer.BYTES);
+          return buffer.getInt();
+     }
+
+     /**
+      * Reads a double
+      *
+      * @return the double
+      * @throws IOException an IO exception
+      */
+     public double readDouble() throws IOException {
+          fill(Double.BYTES);
+          return buffer.getDouble();
+     }
+
+     /**
+      * Reads the number of entries that follow, each of which takes up at least a
+      * number of bytes
+      *
+      * @param entryBytes the fewest bytes an entry takes up
+      * @return the number of entries
+      * @throws IOException if the count is negative or there aren't enough bytes
+      *                     left for that many entries
+      */
+     public int readCount(int entryBytes) throws IOException {
+          int count = readInt();
+          if (count < 0 || (long) count * entryBytes > remaining()) {
+               throw new IOException("The index file has " + count + " entries but only " + remaining()
+                         + " bytes are left");
+          }
+          return count;
+     }
+
+     /**
+      * Reads a string written by {@link #writeString(String)}
+      *
+      * @return the string
+      * @throws IOException an IO exception
+      */
+     public String readString() throws IOException {
+          int length = readInt();
+          return new String(readBytes(length).array(), UTF_8);
+     }
+
+     /**
+      * Reads bytes into a new heap buffer
+      *
+      * @param length the number of bytes
+      * @return the buffer
+      * @throws IOException if the length is negative or more than is left of the
+      *                     file
+      */
+     public ByteBuffer readBytes(int length) throws IOException {
+          checkLength(length);
+          ByteBuffer bytes = ByteBuffer.allocate(length);
+
+          int buffered = Math.min(length, buffer.remaining());
+          ByteBuffer slice = buffer.slice();
+          slice.limit(buffered);
+          bytes.put(slice);
+          buffer.position(buffer.position() + buffered);
+
+          while (bytes.hasRemaining()) {
+               if (channel.read(bytes) < 0) {
+                    throw new EOFException("The index file ended early");
+               }
+          }
+
+          bytes.flip();
+          return bytes;
+     }
+
+     /**
+      * Maps bytes straight from the file instead of reading them, moving past them
+      * like a read would. The mapping stays valid after the file is closed, and
+      * the operating system pages it in and out as needed, so it doesn't count
+      * against the Java heap.
+      *
+      * @param length the number of bytes
+      * @return the read-only mapped buffer
+      * @throws IOException if the length is negative or more than is left of the
+      *                     file
+      */
+     public MappedByteBuffer mapBytes(int length) throws IOException {
+          checkLength(length);
+          long position = channel.position() - buffer.remaining();
+          MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+          channel.position(position + length);
+          buffer.clear().flip();
+          return mapped;
+     }
+
+     /**
+      * Gets the number of bytes left to read
+      *
+      * @return the number of bytes
+      * @throws IOException an IO exception
+      */
+     public long remaining() throws IOException {
+          return channel.size() - channel.position() + buffer.remaining();
+     }
+
+     /**
+      * Checks that a length read from the file fits in what is left of it
+      *
+      * @param length the length
+      * @throws IOException if the length is negative or more than is left
+      */
+     private void checkLength(int length) throws IOException {
+          if (length < 0 || length > remaining()) {
+               throw new IOException("The index file has a length of " + length + " but only " + remaining()
+                         + " bytes are left");
+          }
+     }
+
+     /**
+      * Makes sure the buffer has enough bytes to read
+      *
+      * @param needed the number of bytes needed
+      * @throws IOException an IO exception
+      */
+     private void fill(int needed) throws IOException {
+          if (buffer.remaining() < needed) {
+               buffer.compact();
+               while (buffer.position() < needed) {
+                    if (channel.read(buffer) < 0) {
+                         throw new EOFException("The index file ended early");
+                    }
+               }
+               buffer.flip();
+          }
+     }
+
+     /**
+      * Writes everything in the buffer to the channel
+      *
+      * @throws IOException an IO exception
+      */
+     private void flush() throws IOException {
+          buffer.flip();
+          while (buffer.hasRemaining()) {
+               channel.write(buffer);
+          }
+          buffer.clear();
+     }
+
+     @Override
+     public void close() throws IOException {
+          try {
+               if (writing) {
+                    flush();
+               }
+          } finally {
+               channel.close();
+          }
+     }
+}
@@ -4,16 +4,20 @@ import java.io.IOException;
 import java.io.Writer;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Class responsible for keeping the data structures for the indexes and counts
@@ -26,21 +30,83 @@ import java.util.TreeMap;
 public class InvertedIndex {
 
      /**
-      * private final indexes
+      * how far below the worst kept score a document can still be scored, since
+      * adding up the highest scores of each word can round down a little
+      */
+     private static final double SCORE_SLACK = 1e-9;
+
+     /**
+      * private final indexes, or null for a subclass that keeps its words
+      * somewhere else
+      */
+     private final TreeMap<String, PostingList> indexes;
+
+     /**
+      * private final documents, which also keeps the counts, or null for a
+      * subclass that keeps its locations somewhere else
+      */
+     private final DocumentTable documents;
+
+     /**
+      * whether positions are kept or only frequencies
+      */
+     private final boolean positions;
+
+     /**
+      * the number of times anything has been added, which a subclass that keeps
+      * its words somewhere else counts up itself
       */
-     private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> indexes;
+     protected long version;
 
      /**
-      * private final counts
+      * the BM25 norms of the last version a search scored with BM25, or null
       */
-     private final TreeMap<String, Integer> counts;
+     private volatile Norms cachedNorms;
 
      /**
       * Inverted Index Constructor
       */
      public InvertedIndex() {
-          indexes = new TreeMap<>();
-          counts = new TreeMap<>();
+          this(true);
+     }
+
+     /**
+      * Inverted Index Constructor for an index that may only keep how many times
+      * each word appears in each location. That is enough for searching, but the
+      * index can't be written and the positions can't be looked up. Adding a
+      * location again adds to its counts instead of merging positions, see
+      * {@link PostingList}.
+      * 
+      * @param positions whether to keep positions or only frequencies
+      */
+     public InvertedIndex(boolean positions) {
+          this(positions, true);
+     }
+
+     /**
+      * Inverted Index Constructor for a subclass that keeps its words and
+      * locations somewhere else, like in shards or segments, and overrides every
+      * method that adds or reads them, so this index doesn't make storage of its
+      * own that would never be used
+      * 
+      * @param positions whether to keep positions or only frequencies
+      * @param storage   whether this index keeps the words and locations itself
+      */
+     protected InvertedIndex(boolean positions, boolean storage) {
+          indexes = storage ? new TreeMap<>() : null;
+          documents = storage ? new DocumentTable() : null;
+          this.positions = positions;
+          this.version = 0;
+          this.cachedNorms = null;
+     }
+
+     /**
+      * Checks whether the index keeps the positions of words
+      * 
+      * @return false if the index only keeps frequencies
+      */
+     public boolean hasPositions() {
+          return positions;
      }
 
      /**
@@ -50,17 +116,47 @@ public class InvertedIndex {
       * @return the TreeSet of results
       */
      public List<QueryEntry> exactSearch(Set<String> queries) {
-          Iterator<String> searchIterator = queries.iterator();
+          return exactSearch(queries, 0);
+     }
 
-          List<QueryEntry> entries = new ArrayList<>();
-          Map<String, QueryEntry> lookup = new HashMap<>();
+     /**
+      * The exact search for a set of queries that only keeps the best results
+      * 
+      * @param queries the queries
+      * @param limit   the most results to return, or 0 for all of them
+      * @return the sorted results
+      */
+     public List<QueryEntry> exactSearch(Set<String> queries, int limit) {
+          return exactSearch(queries, limit, false);
+     }
+
+     /**
+      * The exact search for a set of queries that only keeps the best results,
+      * scored either by matches over total words or with BM25
+      * 
+      * @param queries the queries
+      * @param limit   the most results to return, or 0 for all of them
+      * @param bm25    whether to score with BM25
+      * @return the sorted results
+      */
+     public List<QueryEntry> exactSearch(Set<String> queries, int limit, boolean bm25) {
+          Bm25 norms = bm25 ? getBm25() : null;
 
-          while (searchIterator.hasNext()) {
-               queryWord(indexes.get(searchIterator.next()), entries, lookup);
+          if (limit > 0) {
+               Term[] terms = getTerms(queries, norms);
+               if (terms != null) {
+                    return pruningSearch(terms, limit, norms);
+               }
           }
 
-          Collections.sort(entries);
-          return entries;
+          int[] matches = new int[getDocumentCount()];
+          double[] scores = bm25 ? new double[matches.length] : null;
+
+          for (String query : queries) {
+               queryWord(getPostings(query), matches, scores, norms);
+          }
+
+          return getEntries(matches, scores, limit);
      }
 
      /**
@@ -70,48 +166,326 @@ public class InvertedIndex {
       * @return the TreeSet of results
       */
      public List<QueryEntry> partialSearch(Set<String> queries) {
-          List<QueryEntry> entries = new ArrayList<>();
-          Map<String, QueryEntry> lookup = new HashMap<>();
+          return partialSearch(queries, 0);
+     }
+
+     /**
+      * the partial search given a set of queries that only keeps the best results
+      * 
+      * @param queries the queries
+      * @param limit   the most results to return, or 0 for all of them
+      * @return the sorted results
+      */
+     public List<QueryEntry> partialSearch(Set<String> queries, int limit) {
+          return partialSearch(queries, limit, false);
+     }
+
+     /**
+      * the partial search given a set of queries that only keeps the best results,
+      * scored either by matches over total words or with BM25
+      * 
+      * @param queries the queries
+      * @param limit   the most results to return, or 0 for all of them
+      * @param bm25    whether to score with BM25
+      * @return the sorted results
+      */
+     public List<QueryEntry> partialSearch(Set<String> queries, int limit, boolean bm25) {
+          Bm25 norms = bm25 ? getBm25() : null;
+          PrefixCache cache = getPrefixCache();
+          int[] matches = new int[getDocumentCount()];
+          double[] scores = bm25 ? new double[matches.length] : null;
 
           for (String stem : queries) {
+               if (cache != null) {
+                    queryPrefix(stem, cache, matches, scores, norms);
+               } else {
+                    forEachWord(stem, (word, postings) -> queryWord(postings, matches, scores, norms));
+               }
+          }
+
+          return getEntries(matches, scores, limit);
+     }
 
-               Iterator<Entry<String, TreeMap<String, TreeSet<Integer>>>> entrySet = indexes.tailMap(stem).entrySet()
-                         .iterator();
-               Entry<String, TreeMap<String, TreeSet<Integer>>> curr = null;
+     /**
+      * queries every word that starts with the prefix, going through the cache
+      * for prefixes that expand to many words
+      * 
+      * @param prefix  the prefix
+      * @param cache   the cache
+      * @param matches the matches so far indexed by document id
+      * @param scores  the BM25 scores so far indexed by document id, or null
+      * @param norms   the BM25 norms, or null
+      */
+     private void queryPrefix(String prefix, PrefixCache cache, int[] matches, double[] scores, Bm25 norms) {
+          PrefixCache.Expansion expansion = cache.get(prefix, scores != null);
 
-               while (entrySet.hasNext() && (curr = entrySet.next()).getKey().startsWith(stem)) {
-                    queryWord(indexes.get(curr.getKey()), entries, lookup);
+          if (expansion == null) {
+               List<PostingsCursor> words = new ArrayList<>();
+               forEachWord(prefix, (word, postings) -> words.add(postings));
+
+               if (words.size() < PrefixCache.MIN_WORDS) {
+                    for (PostingsCursor postings : words) {
+                         queryWord(postings, matches, scores, norms);
+                    }
+                    return;
+               }
+
+               int[] prefixMatches = new int[matches.length];
+               double[] prefixScores = scores != null ? new double[matches.length] : null;
+               for (PostingsCursor postings : words) {
+                    queryWord(postings, prefixMatches, prefixScores, norms);
                }
+
+               expansion = new PrefixCache.Expansion(prefixMatches, prefixScores);
+               cache.put(prefix, expansion);
           }
 
-          Collections.sort(entries);
-          return entries;
+          expansion.addTo(matches, scores);
      }
 
      /**
       * queries the word in the locations
       * 
-      * @param wordLocations the locations of the word
-      * @param entries       the entries of QueryEntries
-      * @param lookup        the lookup table
+      * @param postings the postings of the word
+      * @param matches  the matches so far indexed by document id
+      * @param scores   the BM25 scores so far indexed by document id, or null
+      * @param norms    the BM25 norms, or null
+      */
+     private void queryWord(PostingsCursor postings, int[] matches, double[] scores, Bm25 norms) {
+          if (postings != null) {
+               double idf = scores != null ? Bm25.idf(matches.length, postings.size()) : 0;
+
+               while (postings.next()) {
+                    int document = postings.document();
+                    matches[document] += postings.frequency();
+                    if (scores != null) {
+                         scores[document] += norms.score(idf, postings.frequency(), document);
+                    }
+               }
+          }
+     }
+
+     /**
+      * Gets the postings and the highest possible score of every query word that
+      * is in the index
+      * 
+      * @param queries the queries
+      * @param norms   the BM25 norms, or null to score by matches over total words
+      * @return the terms, or null if the index doesn't know the highest scores
+      */
+     private Term[] getTerms(Set<String> queries, Bm25 norms) {
+          List<Term> terms = new ArrayList<>();
+
+          for (String query : queries) {
+               double bound = getMaxScore(query);
+               if (Double.isNaN(bound)) {
+                    return null;
+               }
+
+               PostingsCursor postings = getPostings(query);
+               if (postings != null && postings.next()) {
+                    double idf = norms != null ? Bm25.idf(getDocumentCount(), postings.size()) : 0;
+                    terms.add(new Term(postings, norms, idf, bound, terms.size()));
+               }
+          }
+
+          return terms.toArray(Term[]::new);
+     }
+
+     /**
+      * Finds the best entries by walking the postings of every term one document
+      * at a time, like Block-Max WAND. The terms are kept sorted by their current
+      * document, and the pivot is the first term where the highest scores of the
+      * terms so far could beat the worst kept entry. No document before the pivot
+      * can make the cut, so the terms behind it skip straight to the pivot
+      * document. Once every term up to the pivot is on it, the highest scores of
+      * their current blocks are checked as well, and if even those can't make the
+      * cut the terms skip the rest of their blocks without reading them. The BM25
+      * scores of the words are added up in the order of the query, so a document
+      * gets exactly the same score as when every match is scored. This gives the
+      * same entries as {@link #getEntries(int[], double[], int)} without scoring
+      * every matching document.
+      * 
+      * @param terms the terms, each on its first document
+      * @param limit the most entries to return
+      * @param norms the BM25 norms, or null to score by matches over total words
+      * @return the sorted list of query entries
+      */
+     private List<QueryEntry> pruningSearch(Term[] terms, int limit, Bm25 norms) {
+          PriorityQueue<QueryEntry> best = new PriorityQueue<>(limit, Collections.reverseOrder());
+          double[] scores = norms != null ? new double[terms.length] : null;
+          int active = terms.length;
+
+          while (true) {
+               Term.sort(terms, active);
+               while (active > 0 && terms[active - 1].document == Term.DONE) {
+                    active--;
+               }
+
+               double threshold = best.size() == limit ? best.peek().getScore() - SCORE_SLACK : 0;
+               double bound = 0;
+               int pivot = 0;
+
+               while (pivot < active && (bound += terms[pivot].bound) < threshold) {
+                    pivot++;
+               }
+
+               if (pivot == active) {
+                    break;
+               }
+
+               int document = terms[pivot].document;
+
+               if (terms[0].document != document) {
+                    for (int i = 0; i < pivot; i++) {
+                         terms[i].advance(document);
+                    }
+                    continue;
+               }
+
+               while (pivot + 1 < active && terms[pivot + 1].document == document) {
+                    pivot++;
+               }
+
+               double blockBound = 0;
+               int blockLast = Integer.MAX_VALUE;
+               for (int i = 0; i <= pivot; i++) {
+                    blockBound += terms[i].blockBound();
+                    blockLast = Math.min(blockLast, terms[i].postings.blockLast());
+               }
+
+               if (blockBound < threshold) {
+                    int target = blockLast + 1;
+                    if (pivot + 1 < active) {
+                         target = Math.min(target, terms[pivot + 1].document);
+                    }
+
+                    for (int i = 0; i <= pivot; i++) {
+                         terms[i].advance(target);
+                    }
+               } else {
+                    int matches = 0;
+                    for (int i = 0; i <= pivot; i++) {
+                         int frequency = terms[i].postings.frequency();
+                         matches += frequency;
+                         if (norms != null) {
+                              scores[terms[i].order] = norms.score(terms[i].idf, frequency, document);
+                         }
+                         terms[i].next();
+                    }
+
+                    double score = 0;
+                    if (norms != null) {
+                         for (int i = 0; i < scores.length; i++) {
+                              score += scores[i];
+                              scores[i] = 0;
+                         }
+                    }
+                    offer(best, limit, document, matches, norms != null ? score : ratio(document, matches));
+               }
+          }
+
+          return sort(best);
+     }
+
+     /**
+      * Creates the sorted query entries for the documents with matches. With a
+      * limit, only the best entries are kept in a bounded heap whose head is the
+      * worst of them, so a document only becomes an entry if it could make the
+      * cut, and the matches are never fully sorted.
+      * 
+      * @param matches the matches indexed by document id
+      * @param scores  the scores indexed by document id, or null to score by
+      *                matches over total words
+      * @param limit   the most entries to return, or 0 for all of them
+      * @return the sorted list of query entries
       */
-     private void queryWord(TreeMap<String, TreeSet<Integer>> wordLocations, List<QueryEntry> entries,
-               Map<String, QueryEntry> lookup) {
-          if (wordLocations != null) {
-               var locationIterator = wordLocations.entrySet().iterator();
-               while (locationIterator.hasNext()) {
-                    Entry<String, TreeSet<Integer>> location = locationIterator.next();
+     private List<QueryEntry> getEntries(int[] matches, double[] scores, int limit) {
+          if (limit <= 0) {
+               List<QueryEntry> entries = new ArrayList<>();
+
+               for (int document = 0; document < matches.length; document++) {
+                    if (matches[document] > 0) {
+                         double score = scores != null ? scores[document] : ratio(document, matches[document]);
+                         entries.add(createEntry(document, matches[document], score));
+                    }
+               }
+
+               Collections.sort(entries);
+               return entries;
+          }
 
-                    lookup.computeIfAbsent(location.getKey(), (String f) -> {
-                         QueryEntry newEntry = new QueryEntry(location.getKey());
-                         entries.add(newEntry);
-                         return newEntry;
-                    });
+          PriorityQueue<QueryEntry> best = new PriorityQueue<>(limit, Collections.reverseOrder());
 
-                    int size = location.getValue().size();
-                    lookup.get(location.getKey()).addQuery(size);
+          for (int document = 0; document < matches.length; document++) {
+               if (matches[document] > 0) {
+                    double score = scores != null ? scores[document] : ratio(document, matches[document]);
+                    offer(best, limit, document, matches[document], score);
                }
           }
+
+          return sort(best);
+     }
+
+     /**
+      * Gets the score of a document as its matches over its total words
+      * 
+      * @param document the document id
+      * @param matches  the number of matches in the document
+      * @return the score
+      */
+     private double ratio(int document, int matches) {
+          return (double) matches / getDocumentWords(document);
+     }
+
+     /**
+      * Adds a document to the bounded heap of the best entries if it makes the
+      * cut, only creating its entry if its score could
+      * 
+      * @param best     the best entries so far, with the worst at the head
+      * @param limit    the most entries to keep
+      * @param document the document id
+      * @param matches  the number of matches in the document
+      * @param score    the score of the document
+      */
+     private void offer(PriorityQueue<QueryEntry> best, int limit, int document, int matches, double score) {
+          if (best.size() == limit && score < best.peek().getScore()) {
+               return;
+          }
+
+          QueryEntry entry = createEntry(document, matches, score);
+          if (best.size() < limit) {
+               best.add(entry);
+          } else if (entry.compareTo(best.peek()) < 0) {
+               best.poll();
+               best.add(entry);
+          }
+     }
+
+     /**
+      * Sorts the entries of a heap or list from best to worst
+      * 
+      * @param best the entries
+      * @return the sorted list of query entries
+      */
+     private static List<QueryEntry> sort(Collection<QueryEntry> best) {
+          List<QueryEntry> entries = new ArrayList<>(best);
+          Collections.sort(entries);
+          return entries;
+     }
+
+     /**
+      * Creates the query entry of a document
+      * 
+      * @param document the document id
+      * @param matches  the number of matches in the document
+      * @param score    the score of the document
+      * @return the query entry
+      */
+     private QueryEntry createEntry(int document, int matches, double score) {
+          QueryEntry entry = new QueryEntry(getDocumentLocation(document), getDocumentWords(document));
+          entry.addQuery(matches, score);
+          return entry;
      }
 
      /**
@@ -122,13 +496,229 @@ public class InvertedIndex {
       * @return the list of query entries
       */
      public List<QueryEntry> search(Set<String> queries, boolean partial) {
+          return search(queries, partial, 0);
+     }
+
+     /**
+      * searches from the queries and whether it's partial, only keeping the best
+      * results
+      * 
+      * @param queries the queries
+      * @param partial search type
+      * @param limit   the most results to return, or 0 for all of them
+      * @return the sorted list of query entries
+      */
+     public List<QueryEntry> search(Set<String> queries, boolean partial, int limit) {
+          return search(queries, partial, limit, false);
+     }
+
+     /**
+      * searches from the queries and whether it's partial, only keeping the best
+      * results, scored either by matches over total words or with BM25
+      * 
+      * @param queries the queries
+      * @param partial search type
+      * @param limit   the most results to return, or 0 for all of them
+      * @param bm25    whether to score with BM25
+      * @return the sorted list of query entries
+      */
+     public List<QueryEntry> search(Set<String> queries, boolean partial, int limit, boolean bm25) {
           if (partial) {
-               return partialSearch(queries);
+               return partialSearch(queries, limit, bm25);
           } else {
-               return exactSearch(queries);
+               return exactSearch(queries, limit, bm25);
           }
      }
 
+     /**
+      * Searches for every word within an edit distance of each query, so queries
+      * with typos still find the words they meant. The matching words are found
+      * by walking a Levenshtein automaton over the sorted words of the index, and
+      * are then searched like the partial search searches the words a prefix
+      * expands to. Short queries are allowed fewer edits, see
+      * {@link LevenshteinAutomaton#distanceFor(String, int)}.
+      * 
+      * @param queries  the queries
+      * @param distance the most edits a matching word can be from a query
+      * @param limit    the most results to return, or 0 for all of them
+      * @param bm25     whether to score with BM25
+      * @return the sorted list of query entries
+      */
+     public List<QueryEntry> fuzzySearch(Set<String> queries, int distance, int limit, boolean bm25) {
+          Bm25 norms = bm25 ? getBm25() : null;
+          int[] matches = new int[getDocumentCount()];
+          double[] scores = bm25 ? new double[matches.length] : null;
+
+          for (String stem : queries) {
+               int edits = LevenshteinAutomaton.distanceFor(stem, distance);
+               new LevenshteinAutomaton(stem, edits).forEachMatch(walkWords(),
+                         word -> queryWord(getPostings(word), matches, scores, norms));
+          }
+
+          return getEntries(matches, scores, limit);
+     }
+
+     /**
+      * Searches for a quoted phrase, or for its words within a distance of each
+      * other. The documents that have every word are found first by stepping
+      * through the postings together from the rarest word, and only their
+      * positions are read and merged. A document scores like the exact search
+      * would if only the matched words counted.
+      * 
+      * @param phrase the phrase
+      * @param limit  the most results to return, or 0 for all of them
+      * @return the sorted list of query entries
+      * @throws UnsupportedOperationException if the index only keeps frequencies
+      */
+     public List<QueryEntry> phraseSearch(PhraseQuery phrase, int limit) {
+          List<String> words = phrase.getWords();
+          PostingsCursor[] postings = new PostingsCursor[words.size()];
+
+          for (int i = 0; i < postings.length; i++) {
+               postings[i] = getPostings(words.get(i));
+               if (postings[i] == null || !postings[i].next()) {
+                    return new ArrayList<>();
+               }
+          }
+
+          PostingsCursor[] rarest = postings.clone();
+          Arrays.sort(rarest, Comparator.comparingInt(PostingsCursor::size));
+
+          List<QueryEntry> entries = new ArrayList<>();
+          PriorityQueue<QueryEntry> best = new PriorityQueue<>(Math.max(1, limit), Collections.reverseOrder());
+          PositionList[] positions = new PositionList[postings.length];
+
+          int[] repeats = new int[postings.length];
+          for (String word : words) {
+               repeats[words.indexOf(word)]++;
+          }
+
+          boolean more = true;
+
+          while (more) {
+               int document = rarest[0].document();
+               int target = document;
+
+               for (int i = 1; more && target == document && i < rarest.length; i++) {
+                    if (rarest[i].document() < document) {
+                         more = rarest[i].advance(document);
+                    }
+                    target = rarest[i].document();
+               }
+
+               if (!more) {
+                    break;
+               }
+
+               if (target > document) {
+                    more = rarest[0].advance(target);
+                    continue;
+               }
+
+               for (int j = 0; j < postings.length; j++) {
+                    positions[j] = postings[j].positions();
+               }
+
+               int occurrences = countOccurrences(positions, repeats, phrase.getDistance());
+               if (occurrences > 0) {
+                    int matches = occurrences * postings.length;
+                    if (limit > 0) {
+                         offer(best, limit, document, matches, ratio(document, matches));
+                    } else {
+                         entries.add(createEntry(document, matches, ratio(document, matches)));
+                    }
+               }
+
+               more = rarest[0].next();
+          }
+
+          return limit > 0 ? sort(best) : sort(entries);
+     }
+
+     /**
+      * Searches for a boolean query by walking its cursor, which only visits the
+      * documents that match
+      * 
+      * @param query   the query
+      * @param partial whether words also match the words they are a prefix of
+      * @param limit   the most results to return, or 0 for all of them
+      * @return the sorted list of query entries
+      */
+     public List<QueryEntry> booleanSearch(BooleanQuery query, boolean partial, int limit) {
+          PostingsCursor matches = query.cursor(this, partial);
+          List<QueryEntry> entries = new ArrayList<>();
+          PriorityQueue<QueryEntry> best = new PriorityQueue<>(Math.max(1, limit), Collections.reverseOrder());
+
+          while (matches.next()) {
+               int frequency = matches.frequency();
+               if (frequency > 0) {
+                    if (limit > 0) {
+                         offer(best, limit, matches.document(), frequency, ratio(matches.document(), frequency));
+                    } else {
+                         entries.add(createEntry(matches.document(), frequency, ratio(matches.document(), frequency)));
+                    }
+               }
+          }
+
+          return limit > 0 ? sort(best) : sort(entries);
+     }
+
+     /**
+      * Counts the positions of the first word where the rest of a phrase matches,
+      * either right after it in order or within the distance. The positions are
+      * sorted and every start only moves forward, so each list is merged once.
+      * 
+      * <p>
+      * Within a distance every word of the phrase needs a position of its own, so
+      * a word that is in the phrase more than once needs that many positions
+      * within the distance, counting the first word's position if it is that
+      * word. Different words never share a position.
+      * 
+      * @param positions the positions of each word of the phrase in a document
+      * @param repeats   the number of times each word is in the phrase, kept at
+      *                  its first place in the phrase and 0 at the others
+      * @param distance  the distance, or 0 for an exact phrase
+      * @return the number of matches
+      */
+     private static int countOccurrences(PositionList[] positions, int[] repeats, int distance) {
+          int[] next = new int[positions.length];
+          int[] end = new int[positions.length];
+          int occurrences = 0;
+
+          for (int j = 0; j < positions[0].size(); j++) {
+               int first = positions[0].get(j);
+               boolean found = true;
+
+               if (distance == 0) {
+                    for (int i = 1; i < positions.length && found; i++) {
+                         while (next[i] < positions[i].size() && positions[i].get(next[i]) < first + i) {
+                              next[i]++;
+                         }
+                         found = next[i] < positions[i].size() && positions[i].get(next[i]) == first + i;
+                    }
+               } else {
+                    for (int i = 0; i < positions.length && found; i++) {
+                         if (repeats[i] > 0) {
+                              while (next[i] < positions[i].size() && positions[i].get(next[i]) < first - distance) {
+                                   next[i]++;
+                              }
+                              end[i] = Math.max(end[i], next[i]);
+                              while (end[i] < positions[i].size() && positions[i].get(end[i]) <= first + distance) {
+                                   end[i]++;
+                              }
+                              found = end[i] - next[i] >= repeats[i];
+                         }
+                    }
+               }
+
+               if (found) {
+                    occurrences++;
+               }
+          }
+
+          return occurrences;
+     }
+
      /**
       * Adds an index to the index map. This is used to determine which words are in
       * the index map when looking for a word that has already been added
@@ -138,12 +728,12 @@ public class InvertedIndex {
       * @param index    - the index to add to the index map
       */
      public void addIndex(String word, String location, int index) {
-          boolean result = indexes.computeIfAbsent(word, k -> new TreeMap<>())
-                    .computeIfAbsent(location, k -> new TreeSet<>())
-                    .add(index);
+          int document = documents.add(location);
+          boolean result = indexes.computeIfAbsent(word, k -> new PostingList(positions)).add(document, index);
           if (result) {
-               counts.merge(location, 1, Integer::sum);
+               documents.addCount(document, 1);
           }
+          version++;
      }
 
      /**
@@ -154,11 +744,16 @@ public class InvertedIndex {
       * @param indices  the indices
       */
      public void addIndex(String word, String location, Set<Integer> indices) {
-          TreeSet<Integer> instances = indexes.computeIfAbsent(word, k -> new TreeMap<>()).computeIfAbsent(location,
-                    k -> new TreeSet<>());
-          int originalSize = instances.size();
-          instances.addAll(indices);
-          counts.merge(location, instances.size() - originalSize, Integer::sum);
+          int document = documents.add(location);
+          PostingList postings = indexes.computeIfAbsent(word, k -> new PostingList(positions));
+          int added = 0;
+          for (int index : indices) {
+               if (postings.add(document, index)) {
+                    added++;
+               }
+          }
+          documents.addCount(document, added);
+          version++;
      }
      
      /**
@@ -167,34 +762,191 @@ public class InvertedIndex {
       * @param otherIndex the other inverted index
       */
      public void addIndex(InvertedIndex otherIndex) {
-          for (var otherEntry : otherIndex.counts.entrySet()) {
-               this.counts.merge(otherEntry.getKey(), otherEntry.getValue(), Integer::sum);
-          }
-    	
-          for (var otherEntry : otherIndex.indexes.entrySet()) {
-               var word = otherEntry.getKey();
-               var otherLocations = otherEntry.getValue();
-               var thisLocations = this.indexes.get(word);
-
-               if (thisLocations == null) {
-                    this.indexes.put(word, otherLocations);
-                    
-               } else {
-                    for (var otherLocationEntry : otherLocations.entrySet()) {
-                         var location = otherLocationEntry.getKey();
-                         var positions = otherLocationEntry.getValue();
-                         var thisPositions = thisLocations.get(location);
-
-                         if (thisPositions == null) {
-                              thisLocations.put(location, positions);
-                         } else {
-                              int originalSize = thisPositions.size();
-                              thisPositions.addAll(positions);
-                              this.counts.merge(location, thisPositions.size() - originalSize, Integer::sum);
-                         }
-                    }
+          int[] documentIds = new int[otherIndex.getDocumentCount()];
+          for (int document = 0; document < documentIds.length; document++) {
+               documentIds[document] = this.documents.add(otherIndex.getDocumentLocation(document));
+          }
+
+          otherIndex.forEachWord("", (word, otherPostings) -> {
+               var thisPostings = this.indexes.computeIfAbsent(word, k -> new PostingList(positions));
+
+               while (otherPostings.next()) {
+                    int document = documentIds[otherPostings.document()];
+                    this.documents.addCount(document, thisPostings.add(document, otherPostings));
                }
+          });
+          version++;
+     }
+
+     /**
+      * Moves every position in the index up by an offset, such as for the local
+      * index of a range of lines that was numbered from 1 before the position of
+      * its first word in the file was known. Only an index that no other thread
+      * uses, like a local index, can be shifted.
+      * 
+      * @param offset the number to add to every position
+      * @throws UnsupportedOperationException if the index doesn't keep its words
+      *                                       itself
+      */
+     public void shiftPositions(int offset) {
+          if (indexes == null) {
+               throw new UnsupportedOperationException("Only an index that keeps its own words can be shifted");
           }
+
+          if (positions && offset != 0) {
+               for (PostingList postings : indexes.values()) {
+                    postings.shift(offset);
+               }
+               version++;
+          }
+     }
+
+     /**
+      * Gets a number that changes after anything is added, so results that were
+      * worked out before can be told apart from what a search would find now
+      * 
+      * @return the version
+      */
+     public long getVersion() {
+          return version;
+     }
+
+     /**
+      * Creates a read-only copy of this index with compressed postings. Searching
+      * the sealed copy doesn't need any locking.
+      * 
+      * @return the sealed index
+      */
+     public SealedInvertedIndex seal() {
+          return new SealedInvertedIndex(this);
+     }
+
+     /**
+      * Writes the index to a binary index file, which can be loaded back with
+      * {@link SealedInvertedIndex#readBinary(Path)}
+      * 
+      * @param path the output path
+      * @throws IOException io exception
+      */
+     public void writeBinary(Path path) throws IOException {
+          seal().writeBinary(path);
+     }
+
+     /**
+      * Gets a cursor over the postings of a word
+      * 
+      * @param word the word
+      * @return the cursor or null if the word isn't in the index
+      */
+     protected PostingsCursor getPostings(String word) {
+          PostingList postings = indexes.get(word);
+          return postings != null ? postings.cursor() : null;
+     }
+
+     /**
+      * Gets the highest score the word alone gives any document, which is its
+      * highest frequency in a document over the word count of that document. This
+      * index changes as words are added, so it doesn't keep them.
+      * 
+      * @param word the word
+      * @return the highest score, or NaN if the index doesn't keep it
+      */
+     protected double getMaxScore(String word) {
+          return Double.NaN;
+     }
+
+     /**
+      * Gets the BM25 norms of the documents. They are kept along with the
+      * {@link #getVersion() version} they were worked out at, and only worked out
+      * again once something has been added.
+      * 
+      * @return the norms
+      */
+     protected Bm25 getBm25() {
+          long current = getVersion();
+          Norms cached = cachedNorms;
+          if (cached == null || cached.version != current) {
+               cached = new Norms(current, new Bm25(this));
+               cachedNorms = cached;
+          }
+          return cached.bm25;
+     }
+
+     /**
+      * Gets the cache of what partial searches found for each prefix. This index
+      * changes as words are added without keeping track of it, so it doesn't
+      * keep one.
+      * 
+      * @return the cache, or null if the index doesn't keep one
+      */
+     protected PrefixCache getPrefixCache() {
+          return null;
+     }
+
+     /**
+      * Gets a function that finds the first word of the index that isn't before a
+      * target, for one walk through the words in order
+      * 
+      * @return the function, which returns null if every word is before the
+      *         target
+      */
+     protected UnaryOperator<String> walkWords() {
+          return indexes::ceilingKey;
+     }
+
+     /**
+      * Goes through every word that starts with the prefix, in sorted order, along
+      * with a cursor over its postings
+      * 
+      * @param prefix the prefix
+      * @param action the action for each word and its postings
+      */
+     protected void forEachWord(String prefix, BiConsumer<String, PostingsCursor> action) {
+          Iterator<Entry<String, PostingList>> entrySet = indexes.tailMap(prefix).entrySet().iterator();
+          Entry<String, PostingList> curr = null;
+
+          while (entrySet.hasNext() && (curr = entrySet.next()).getKey().startsWith(prefix)) {
+               action.accept(curr.getKey(), curr.getValue().cursor());
+          }
+     }
+
+     /**
+      * Gets the number of documents in the index
+      * 
+      * @return the number of documents
+      */
+     protected int getDocumentCount() {
+          return documents.size();
+     }
+
+     /**
+      * Gets the id of a document
+      * 
+      * @param location the location of the document
+      * @return the document id or -1 if the location isn't in the index
+      */
+     protected int getDocumentId(String location) {
+          return documents.getId(location);
+     }
+
+     /**
+      * Gets the location of a document
+      * 
+      * @param document the document id
+      * @return the location
+      */
+     protected String getDocumentLocation(int document) {
+          return documents.getLocation(document);
+     }
+
+     /**
+      * Gets the word count of a document
+      * 
+      * @param document the document id
+      * @return the word count
+      */
+     protected int getDocumentWords(int document) {
+          return documents.getCount(document);
      }
 
      /**
@@ -213,8 +965,15 @@ public class InvertedIndex {
       * @return the list of locations
       */
      public Set<String> getLocationsOfWord(String word) {
-          TreeMap<String, TreeSet<Integer>> wordInIndex = indexes.get(word);
-          return wordInIndex != null ? Collections.unmodifiableSet(wordInIndex.keySet()) : Collections.emptySet();
+          PostingsCursor postings = getPostings(word);
+          if (postings != null) {
+               TreeSet<String> locations = new TreeSet<>();
+               while (postings.next()) {
+                    locations.add(getDocumentLocation(postings.document()));
+               }
+               return Collections.unmodifiableSet(locations);
+          }
+          return Collections.emptySet();
      }
 
      /**
@@ -223,16 +982,39 @@ public class InvertedIndex {
       * @param word     the word
       * @param location the location
       * @return the list of instances
+      * @throws UnsupportedOperationException if the index only keeps frequencies
       */
      public Set<Integer> getInstancesOfWordInLocation(String word, String location) {
-          TreeMap<String, TreeSet<Integer>> wordMap = indexes.get(word);
-          if (wordMap != null) {
-               TreeSet<Integer> instances = wordMap.get(location);
-               if (instances != null) {
-                    return Collections.unmodifiableSet(instances);
-               }
+          PositionList instances = getPositions(word, location);
+          return instances != null ? Collections.unmodifiableSet(instances) : Collections.emptySet();
+     }
+
+     /**
+      * Gets the positions of a word in a location
+      * 
+      * @param word     the word
+      * @param location the location
+      * @return the positions or null if the word isn't in the location
+      */
+     private PositionList getPositions(String word, String location) {
+          PostingsCursor postings = findLocation(word, location);
+          return postings != null ? postings.positions() : null;
+     }
+
+     /**
+      * Finds the postings of a word in a location
+      * 
+      * @param word     the word
+      * @param location the location
+      * @return a cursor on the location or null if the word isn't in the location
+      */
+     private PostingsCursor findLocation(String word, String location) {
+          PostingsCursor postings = getPostings(word);
+          int document = getDocumentId(location);
+          if (postings != null && document >= 0 && postings.advance(document) && postings.document() == document) {
+               return postings;
           }
-          return Collections.emptySet();
+          return null;
      }
 
      /**
@@ -244,7 +1026,7 @@ public class InvertedIndex {
       *         in the indexes
       */
      public boolean hasWord(String word) {
-          return indexes.containsKey(word);
+          return getPostings(word) != null;
      }
 
      /**
@@ -257,8 +1039,7 @@ public class InvertedIndex {
       *         word is not found in the index
       */
      public boolean hasLocation(String word, String location) {
-          TreeMap<String, TreeSet<Integer>> wordInIndex = indexes.get(word);
-          return wordInIndex != null && wordInIndex.containsKey(location);
+          return findLocation(word, location) != null;
      }
 
      /**
@@ -268,14 +1049,29 @@ public class InvertedIndex {
       * @param location the location
       * @param position the position
       * @return whether the position exists in the instances of a word in a location
+      * @throws UnsupportedOperationException if the index only keeps frequencies
       */
      public boolean hasPosition(String word, String location, int position) {
-          TreeMap<String, TreeSet<Integer>> wordInIndex = indexes.get(word);
-          if (wordInIndex != null) {
-               TreeSet<Integer> locationInWord = wordInIndex.get(location);
-               return locationInWord != null && locationInWord.contains(position);
-          }
-          return false;
+          PositionList locationInWord = getPositions(word, location);
+          return locationInWord != null && locationInWord.contains(position);
+     }
+
+     /**
+      * Creates the nested map of word to location to positions, sorted by word and
+      * location, used for writing the index
+      * 
+      * @return the nested map
+      */
+     private Map<String, Map<String, PositionList>> getIndexMap() {
+          TreeMap<String, Map<String, PositionList>> map = new TreeMap<>();
+          forEachWord("", (word, postings) -> {
+               TreeMap<String, PositionList> locations = new TreeMap<>();
+               while (postings.next()) {
+                    locations.put(getDocumentLocation(postings.document()), postings.positions());
+               }
+               map.put(word, locations);
+          });
+          return map;
      }
 
      /**
@@ -283,18 +1079,20 @@ public class InvertedIndex {
       * 
       * @param path the output that
       * @throws IOException io exception
+      * @throws UnsupportedOperationException if the index only keeps frequencies
       */
      public void writeIndex(Path path) throws IOException {
-          JsonWriter.writeObjectMap(indexes, path);
+          JsonWriter.writeObjectMap(getIndexMap(), path);
      }
      
      /**
       * Writes the index to a String
       * 
       * @return the string
+      * @throws UnsupportedOperationException if the index only keeps frequencies
       */
      public String writeIndex() {
-          return JsonWriter.writeObjectMap(indexes);
+          return JsonWriter.writeObjectMap(getIndexMap());
      }
 
      /**
@@ -304,6 +1102,10 @@ public class InvertedIndex {
       * @return A TreeMap of counts keyed by category.
       */
      public Map<String, Integer> getCounts() {
+          TreeMap<String, Integer> counts = new TreeMap<>();
+          for (int document = 0; document < getDocumentCount(); document++) {
+               counts.put(getDocumentLocation(document), getDocumentWords(document));
+          }
           return Collections.unmodifiableMap(counts);
      }
 
@@ -314,7 +1116,8 @@ public class InvertedIndex {
       * @return the word count
       */
      public int getCountsInLocation(String location) {
-          return counts.getOrDefault(location, 0);
+          int document = getDocumentId(location);
+          return document >= 0 ? getDocumentWords(document) : 0;
      }
 
      /**
@@ -326,7 +1129,7 @@ public class InvertedIndex {
       *         or not
       */
      public boolean containsFile(String file) {
-          return counts.containsKey(file);
+          return getDocumentId(file) >= 0;
      }
 
      /**
@@ -346,7 +1149,7 @@ public class InvertedIndex {
       * @throws IOException io exception
       */
      public void writeCounts(Path path) throws IOException {
-          JsonWriter.writeObject(counts, path);
+          JsonWriter.writeObject(getCounts(), path);
      }
      
      /**
@@ -355,16 +1158,16 @@ public class InvertedIndex {
       * @return the string
       */
      public String writeCounts() {
-          return JsonWriter.writeObject(counts);
+          return JsonWriter.writeObject(getCounts());
      }
 
      @Override
      public String toString() {
           StringBuilder builder = new StringBuilder();
           builder.append("Indexes:\n");
-          builder.append(JsonWriter.writeObjectMap(indexes));
+          builder.append(hasPositions() ? writeIndex() : "(only frequencies are kept)\n");
           builder.append("Counts:\n");
-          builder.append(JsonWriter.writeObject(counts));
+          builder.append(writeCounts());
           return builder.toString();
      }
 
@@ -380,7 +1183,7 @@ public class InvertedIndex {
           private final int totalWords;
 
           /**
-           * The total applied words in the file. Stored because counts.get() is O(log(n))
+           * The total applied words in the file
            */
           private int appliedWords;
 
@@ -397,11 +1200,12 @@ public class InvertedIndex {
           /**
            * The constructor for a QueryEntry Object
            * 
-           * @param file the query File
+           * @param file       the query File
+           * @param totalWords the total words in the file
            */
-          public QueryEntry(String file) {
+          public QueryEntry(String file, int totalWords) {
                this.file = file;
-               this.totalWords = counts.get(file);
+               this.totalWords = totalWords;
                appliedWords = 0;
                score = 0;
           }
@@ -425,6 +1229,17 @@ public class InvertedIndex {
                score = ((double) appliedWords / totalWords);
           }
 
+          /**
+           * Sets the applied words and the score that was worked out for them
+           * 
+           * @param appliedWords the amount of applied words in the file
+           * @param score        the score
+           */
+          private void addQuery(int appliedWords, double score) {
+               this.appliedWords = appliedWords;
+               this.score = score;
+          }
+
           /**
            * A simple calculation for determining the score of the query in the file
            * 
@@ -473,4 +1288,136 @@ public class InvertedIndex {
           }
 
      }
+     /**
+      * The BM25 norms of the index at one version
+      */
+     private static class Norms {
+          /**
+           * the version the norms were worked out at
+           */
+          private final long version;
+
+          /**
+           * the norms
+           */
+          private final Bm25 bm25;
+
+          /**
+           * Keeps the norms of a version
+           * 
+           * @param version the version the norms were worked out at
+           * @param bm25    the norms
+           */
+          private Norms(long version, Bm25 bm25) {
+               this.version = version;
+               this.bm25 = bm25;
+          }
+     }
+
+     /**
+      * The postings of a query word along with the highest score it can give
+      */
+     private static class Term {
+          /**
+           * the document of a term whose postings have run out
+           */
+          private static final int DONE = Integer.MAX_VALUE;
+
+          /**
+           * the postings
+           */
+          private final PostingsCursor postings;
+
+          /**
+           * the BM25 norms, or null to score by matches over total words
+           */
+          private final Bm25 norms;
+
+          /**
+           * the idf of the word when scoring with BM25
+           */
+          private final double idf;
+
+          /**
+           * the highest score of the word
+           */
+          private final double bound;
+
+          /**
+           * the position of the word in the query
+           */
+          private final int order;
+
+          /**
+           * the current document of the postings, or {@link #DONE}
+           */
+          private int document;
+
+          /**
+           * Creates a term on the current document of its postings
+           * 
+           * @param postings the postings
+           * @param norms    the BM25 norms, or null to score by matches over total
+           *                 words
+           * @param idf      the idf of the word when scoring with BM25
+           * @param maxScore the highest frequency over word count of the word
+           * @param order    the position of the word in the query
+           */
+          private Term(PostingsCursor postings, Bm25 norms, double idf, double maxScore, int order) {
+               this.postings = postings;
+               this.norms = norms;
+               this.idf = idf;
+               this.bound = norms != null ? norms.bound(idf, maxScore) : maxScore;
+               this.order = order;
+               this.document = postings.document();
+          }
+
+          /**
+           * Gets the highest score of the word in the current block of its postings
+           * 
+           * @return the highest score in the block
+           */
+          private double blockBound() {
+               double maxScore = postings.blockMaxScore();
+               return norms != null ? norms.bound(idf, maxScore) : maxScore;
+          }
+
+          /**
+           * Moves to the next document
+           */
+          private void next() {
+               document = postings.next() ? postings.document() : DONE;
+          }
+
+          /**
+           * Moves to the first document at or after the target, if it isn't there
+           * already
+           * 
+           * @param target the target document id
+           */
+          private void advance(int target) {
+               if (document < target) {
+                    document = postings.advance(target) ? postings.document() : DONE;
+               }
+          }
+
+          /**
+           * Sorts the first terms by their current document. There are only a few
+           * terms and they are almost sorted already, so this is an insertion sort.
+           * 
+           * @param terms  the terms
+           * @param active the number of terms to sort
+           */
+          private static void sort(Term[] terms, int active) {
+               for (int i = 1; i < active; i++) {
+                    Term term = terms[i];
+                    int j = i - 1;
+                    while (j >= 0 && terms[j].document > term.document) {
+                         terms[j + 1] = terms[j];
+                         j--;
+                    }
+                    terms[j + 1] = term;
+               }
+          }
+     }
 }
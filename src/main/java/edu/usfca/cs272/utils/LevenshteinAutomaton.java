@@ -0,0 +1,211 @@
+package edu.usfca.cs272.utils;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Finds the words of a sorted dictionary within an edit distance of a query
+ * word, where inserting, deleting or changing a letter, or swapping two letters
+ * next to each other, is one edit. The automaton reads a candidate word a
+ * letter at a time, and its state after each letter is the row of edit
+ * distances from what it has read to every prefix of the query word. Once no
+ * entry of the row is within the distance, no word that starts with what has
+ * been read can match either.
+ *
+ * <p>
+ * The dictionary is walked in sorted order, so each word shares a prefix with
+ * the word before it and only the rows after that prefix are worked out again.
+ * When a prefix can't match, the walk jumps straight to the next prefix that
+ * still can, trying only the letters of the query word since every other letter
+ * leads to the same row, so only a tiny part of a large dictionary is read.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class LevenshteinAutomaton {
+
+     /**
+      * the query word
+      */
+     private final String word;
+
+     /**
+      * the most edits a match can be from the query word
+      */
+     private final int distance;
+
+     /**
+      * the letters of the query word, sorted and without duplicates
+      */
+     private final char[] letters;
+
+     /**
+      * Creates an automaton
+      *
+      * @param word     the query word
+      * @param distance the most edits a match can be from the query word
+      */
+     public LevenshteinAutomaton(String word, int distance) {
+          this.word = word;
+          this.distance = distance;
+          this.letters = word.chars().sorted().distinct().collect(StringBuilder::new, StringBuilder::appendCodePoint,
+                    StringBuilder::append).toString().toCharArray();
+     }
+
+     /**
+      * Gets the distance to search for a query word with. Almost every short word
+      * is within a couple of edits of any other, so words of up to two letters
+      * only match exactly and words of up to five letters are allowed one edit.
+      *
+      * @param word     the query word
+      * @param distance the most edits asked for
+      * @return the distance
+      */
+     public static int distanceFor(String word, int distance) {
+          int most = word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : 2;
+          return Math.min(distance, most);
+     }
+
+     /**
+      * Goes through every word of a dictionary that is within the distance of the
+      * query word, in sorted order
+      *
+      * @param ceiling gets the first word of the dictionary that isn't before
+      *                the one it is given, or null if there isn't one
+      * @param action  the action for each match
+      */
+     public void forEachMatch(UnaryOperator<String> ceiling, Consumer<String> action) {
+          int[][] rows = new int[16][];
+          rows[0] = new int[word.length() + 1];
+          for (int j = 0; j <= word.length(); j++) {
+               rows[0][j] = j;
+          }
+
+          String previous = "";
+          int known = 0;
+          String candidate = ceiling.apply("");
+
+          while (candidate != null) {
+               int depth = Math.min(known, sharedPrefix(previous, candidate));
+               boolean dead = false;
+
+               while (depth < candidate.length() && !dead) {
+                    if (depth + 1 == rows.length) {
+                         rows = Arrays.copyOf(rows, rows.length * 2);
+                    }
+                    dead = step(rows, depth, candidate.charAt(depth), candidate) > distance;
+                    depth++;
+               }
+
+               previous = candidate;
+               known = depth;
+
+               if (dead) {
+                    String after = null;
+                    while (after == null && --known >= 0) {
+                         int letter = nextLetter(rows, known, candidate);
+                         if (letter >= 0) {
+                              after = candidate.substring(0, known) + (char) letter;
+                         }
+                    }
+                    candidate = after != null ? ceiling.apply(after) : null;
+               } else {
+                    if (rows[depth][word.length()] <= distance) {
+                         action.accept(candidate);
+                    }
+                    candidate = ceiling.apply(candidate + '\0');
+               }
+          }
+     }
+
+     /**
+      * Finds the smallest letter after the one the candidate has at a depth that
+      * can still lead to a match after the letters before it. Every letter that
+      * isn't in the query word leads to the same row, so only the letters of the
+      * query word need to be tried one at a time.
+      *
+      * @param rows      the rows so far, one for each letter read
+      * @param depth     the number of letters before the one to replace
+      * @param candidate the candidate word
+      * @return the letter, or -1 if there isn't one
+      */
+     private int nextLetter(int[][] rows, int depth, String candidate) {
+          boolean others = step(rows, depth, -1, candidate) <= distance;
+          int letter = candidate.charAt(depth) + 1;
+          int index = 0;
+
+          while (letter <= Character.MAX_VALUE) {
+               while (index < letters.length && letters[index] < letter) {
+                    index++;
+               }
+
+               if (index < letters.length && letters[index] == letter) {
+                    if (step(rows, depth, letter, candidate) <= distance) {
+                         return letter;
+                    }
+                    letter++;
+               } else if (others) {
+                    return letter;
+               } else if (index < letters.length) {
+                    letter = letters[index];
+               } else {
+                    return -1;
+               }
+          }
+
+          return -1;
+     }
+
+     /**
+      * Works out the row after reading the next letter of a candidate
+      *
+      * @param rows      the rows so far, one for each letter read
+      * @param depth     the number of letters already read
+      * @param letter    the next letter, or -1 for a letter that isn't in the
+      *                  query word
+      * @param candidate the candidate word, which has the letters already read
+      * @return the smallest edit distance in the new row
+      */
+     private int step(int[][] rows, int depth, int letter, String candidate) {
+          int[] previous = rows[depth];
+          int[] next = rows[depth + 1];
+          if (next == null) {
+               next = rows[depth + 1] = new int[word.length() + 1];
+          }
+
+          next[0] = depth + 1;
+          int smallest = next[0];
+
+          for (int j = 1; j <= word.length(); j++) {
+               int cost = letter == word.charAt(j - 1) ? 0 : 1;
+               int edits = Math.min(previous[j - 1] + cost, Math.min(previous[j], next[j - 1]) + 1);
+
+               if (depth > 0 && j > 1 && letter == word.charAt(j - 2) && candidate.charAt(depth - 1) == word.charAt(j - 1)) {
+                    edits = Math.min(edits, rows[depth - 1][j - 2] + 1);
+               }
+
+               next[j] = edits;
+               smallest = Math.min(smallest, edits);
+          }
+
+          return smallest;
+     }
+
+     /**
+      * Gets the length of the prefix two words share
+      *
+      * @param a the first word
+      * @param b the second word
+      * @return the length of the shared prefix
+      */
+     private static int sharedPrefix(String a, String b) {
+          int limit = Math.min(a.length(), b.length());
+          int shared = 0;
+          while (shared < limit && a.charAt(shared) == b.charAt(shared)) {
+               shared++;
+          }
+          return shared;
+     }
+}
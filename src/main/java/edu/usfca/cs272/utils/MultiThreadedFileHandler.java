@@ -1,11 +1,21 @@
 package edu.usfca.cs272.utils;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Class responsible for filling the InvertedIndex
+ * Class responsible for filling the InvertedIndex. Files are read at the same
+ * time, and a file bigger than {@link #SPLIT_SIZE} by default is split into
+ * ranges of lines that are read at the same time too. Each range is read once
+ * into a local index numbered from 1, which is shifted by the number of words
+ * before the range when it is added, so words are numbered just like reading
+ * the whole file would. A file that can't be read makes
+ * {@link #fillInvertedIndex(Path)} throw once the other files are done.
  *
  * @author Ben Kamin
  * @author CS 272 Software Development (University of San Francisco)
@@ -13,39 +23,97 @@ import java.nio.file.Path;
  */
 public class MultiThreadedFileHandler extends FileHandler {
 
+     /**
+      * the default size of the ranges a big file is split into
+      */
+     public static final long SPLIT_SIZE = 1 << 26;
+
+     /**
+      * the size of the ranges a big file is split into
+      */
+     private final long splitSize;
+
      /**
       * the work queue
       */
      private final WorkQueue workQueue;
      
      /**
-      * The inverted index
+      * The thread safe inverted index
       */
-     private final MultiThreadedInvertedIndex invertedIndex;
+     private final InvertedIndex invertedIndex;
+
+     /**
+      * the first file that couldn't be read since the index was last filled, or
+      * null
+      */
+     private IOException failure;
 
      /**
       * Reads and creates an inversed lookup table of the contents of a file and
       * outputs it to a json
       *
-      * @param invertedIndex the invertedIndex
+      * @param invertedIndex the thread safe invertedIndex, such as a
+      *                      {@link MultiThreadedInvertedIndex},
+      *                      {@link ShardedInvertedIndex} or
+      *                      {@link SegmentedInvertedIndex}
+      * @param workQueue     the work queue
+      */
+     public MultiThreadedFileHandler(InvertedIndex invertedIndex, WorkQueue workQueue) {
+          this(invertedIndex, workQueue, SPLIT_SIZE);
+     }
+
+     /**
+      * Reads and creates an inversed lookup table of the contents of a file and
+      * outputs it to a json, splitting files bigger than a given size
+      *
+      * @param invertedIndex the thread safe invertedIndex
       * @param workQueue     the work queue
+      * @param splitSize     the size of the ranges a big file is split into
       */
-     public MultiThreadedFileHandler(MultiThreadedInvertedIndex invertedIndex, WorkQueue workQueue) {
+     public MultiThreadedFileHandler(InvertedIndex invertedIndex, WorkQueue workQueue, long splitSize) {
           super(invertedIndex);
           this.workQueue = workQueue;
           this.invertedIndex = invertedIndex;
+          this.splitSize = splitSize;
+          this.failure = null;
      }
 
      /**
       * Fills the inverted index with the contents of the file.
       *
       * @param textPath - Path to the text file to be hashed
-      * @throws IOException the IO exception
+      * @throws IOException the IO exception, or the first file that couldn't be
+      *                     read once the others are done
       */
      @Override
      public void fillInvertedIndex(Path textPath) throws IOException {
           super.fillInvertedIndex(textPath);
           workQueue.finish();
+
+          IOException failed;
+          synchronized (this) {
+               failed = failure;
+               failure = null;
+          }
+
+          if (failed != null) {
+               throw failed;
+          }
+     }
+
+     /**
+      * Keeps a file that couldn't be read so that filling the index fails, with
+      * any other ones as suppressed exceptions
+      *
+      * @param e the exception
+      */
+     protected synchronized void fail(IOException e) {
+          if (failure == null) {
+               failure = e;
+          } else {
+               failure.addSuppressed(e);
+          }
      }
 
      /**
@@ -57,7 +125,22 @@ public class MultiThreadedFileHandler extends FileHandler {
       */
      @Override
      public void handleFile(Path file) throws IOException {
-          workQueue.execute(new FileTask(file));
+          long size = Files.size(file);
+          if (size > splitSize) {
+               new SplitFile(file, size).start();
+          } else {
+               workQueue.execute(new FileTask(file));
+          }
+     }
+
+     /**
+      * Adds the local index of a file to the shared index. This is called by each
+      * {@link FileTask} once its file is read.
+      *
+      * @param local the local index of a file
+      */
+     protected void addLocal(InvertedIndex local) {
+          invertedIndex.addIndex(local);
      }
 
      /**
@@ -81,11 +164,174 @@ public class MultiThreadedFileHandler extends FileHandler {
           @Override
           public void run() {
                try {
-                    InvertedIndex local = new InvertedIndex();
+                    InvertedIndex local = new InvertedIndex(invertedIndex.hasPositions());
                     FileHandler.handleFile(input, local);
-                    invertedIndex.addIndex(local);
+                    addLocal(local);
                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
+                    fail(e);
+               }
+          }
+     }
+
+     /**
+      * A big file split into ranges of lines, which are read at the same time
+      * into local indexes numbered from 1. Once every range before one has been
+      * read, its position in the file is known, so it is shifted there and added.
+      * If a range can't be read, neither it nor any range after it is added.
+      */
+     private class SplitFile {
+          /**
+           * The path
+           */
+          private final Path input;
+
+          /**
+           * the start of each range, followed by the size of the file
+           */
+          private final long[] bounds;
+
+          /**
+           * the local index of each range that was read but isn't added yet
+           */
+          private final InvertedIndex[] locals;
+
+          /**
+           * the number of words in each range that was read
+           */
+          private final int[] counts;
+
+          /**
+           * the number of ranges that were added, which are always the first ones
+           */
+          private int added;
+
+          /**
+           * the position of the first word of the next range to add
+           */
+          private int position;
+
+          /**
+           * whether a range couldn't be read
+           */
+          private boolean failed;
+
+          /**
+           * Splits a file into ranges that start at the start of a line
+           * 
+           * @param input the input path
+           * @param size  the size of the file
+           * @throws IOException an IO exception
+           */
+          private SplitFile(Path input, long size) throws IOException {
+               this.input = input;
+
+               long[] starts = new long[(int) ((size + splitSize - 1) / splitSize) + 1];
+               int ranges = 0;
+               try (FileChannel channel = FileChannel.open(input)) {
+                    long start = 0;
+                    while (start < size) {
+                         starts[ranges++] = start;
+                         start = FileHandler.lineStart(channel, start + splitSize);
+                    }
+               }
+               starts[ranges] = size;
+
+               this.bounds = Arrays.copyOf(starts, ranges + 1);
+               this.locals = new InvertedIndex[ranges];
+               this.counts = new int[ranges];
+               this.added = 0;
+               this.position = 1;
+               this.failed = false;
+          }
+
+          /**
+           * Starts reading every range
+           */
+          private void start() {
+               for (int range = 0; range < locals.length; range++) {
+                    workQueue.execute(new RangeTask(range));
+               }
+          }
+
+          /**
+           * Keeps the local index of a range that was read, and shifts and adds
+           * every range that is now next in line
+           * 
+           * @param range the range
+           * @param local the local index of the range, numbered from 1
+           * @param count the number of words in the range
+           */
+          private void finish(int range, InvertedIndex local, int count) {
+               List<InvertedIndex> ready = new ArrayList<>();
+               List<Integer> offsets = new ArrayList<>();
+
+               synchronized (this) {
+                    if (failed) {
+                         return;
+                    }
+
+                    locals[range] = local;
+                    counts[range] = count;
+                    while (added < locals.length && locals[added] != null) {
+                         ready.add(locals[added]);
+                         offsets.add(position - 1);
+                         position += counts[added];
+                         locals[added++] = null;
+                    }
+               }
+
+               for (int i = 0; i < ready.size(); i++) {
+                    ready.get(i).shiftPositions(offsets.get(i));
+                    addLocal(ready.get(i));
+               }
+          }
+
+          /**
+           * Drops the ranges that weren't added, since their positions can't be
+           * known, and fails filling the index
+           * 
+           * @param range the range that couldn't be read
+           * @param e     the exception
+           */
+          private void fail(int range, IOException e) {
+               int indexed;
+               synchronized (this) {
+                    failed = true;
+                    indexed = added;
+                    Arrays.fill(locals, null);
+               }
+               MultiThreadedFileHandler.this.fail(new IOException(input + " could only be indexed up to range " + indexed
+                         + " of " + locals.length + " since range " + range + " couldn't be read", e));
+          }
+
+          /**
+           * The task for reading a range into a local index
+           */
+          private class RangeTask implements Runnable {
+               /**
+                * the range
+                */
+               private final int range;
+
+               /**
+                * The constructor
+                * 
+                * @param range the range
+                */
+               private RangeTask(int range) {
+                    this.range = range;
+               }
+
+               @Override
+               public void run() {
+                    try (FileChannel channel = FileChannel.open(input)) {
+                         InvertedIndex local = new InvertedIndex(invertedIndex.hasPositions());
+                         int count = FileHandler.handleRange(channel, bounds[range], bounds[range + 1],
+                                   input.toString(), local, 1) - 1;
+                         finish(range, local, count);
+                    } catch (IOException e) {
+                         fail(range, e);
+                    }
                }
           }
      }
@@ -5,6 +5,7 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Class responsible for keeping the data structures for the indexes and counts
@@ -26,27 +27,70 @@ public class MultiThreadedInvertedIndex extends InvertedIndex {
       */
      private final MultiReaderLock countsLock;
 
+     /**
+      * the cache of what partial searches found for each prefix, which is cleared
+      * whenever anything is added, or null if searches don't use it
+      */
+     private final PrefixCache prefixCache;
+
      /**
       * Inverted Index Constructor
       */
      public MultiThreadedInvertedIndex() {
-          super();
-          indexesLock = new MultiReaderLock();
-          countsLock = new MultiReaderLock();
+          this(MultiReaderLock::new);
+     }
+
+     /**
+      * Inverted Index Constructor with a choice of locks, such as
+      * {@link ReaderBiasedLock} for an index that is mostly searched
+      * 
+      * @param locks creates each of the locks
+      */
+     public MultiThreadedInvertedIndex(Supplier<MultiReaderLock> locks) {
+          this(locks, true);
+     }
+
+     /**
+      * Inverted Index Constructor with a choice of locks that may only keep
+      * frequencies
+      * 
+      * @param locks     creates each of the locks
+      * @param positions whether to keep positions or only frequencies
+      * @see InvertedIndex#InvertedIndex(boolean)
+      */
+     public MultiThreadedInvertedIndex(Supplier<MultiReaderLock> locks, boolean positions) {
+          this(locks, positions, true);
+     }
+
+     /**
+      * Inverted Index Constructor for a subclass whose searches may not read this
+      * index, which then doesn't need to keep or clear a prefix cache
+      * 
+      * @param locks     creates each of the locks
+      * @param positions whether to keep positions or only frequencies
+      * @param cached    whether partial searches of this index use a prefix cache
+      */
+     protected MultiThreadedInvertedIndex(Supplier<MultiReaderLock> locks, boolean positions, boolean cached) {
+          super(positions);
+          indexesLock = locks.get();
+          countsLock = locks.get();
+          prefixCache = cached ? new PrefixCache() : null;
      }
 
      /**
       * The exact search for a set of queries
       * 
       * @param queries the queries
-      * @return the TreeSet of results
+      * @param limit   the most results to return, or 0 for all of them
+      * @param bm25    whether to score with BM25
+      * @return the sorted results
       */
      @Override
-     public List<QueryEntry> exactSearch(Set<String> queries) {
+     public List<QueryEntry> exactSearch(Set<String> queries, int limit, boolean bm25) {
           indexesLock.readLock().lock();
           countsLock.readLock().lock();
           try {
-               return super.exactSearch(queries);
+               return super.exactSearch(queries, limit, bm25);
           } finally {
                indexesLock.readLock().unlock();
                countsLock.readLock().unlock();
@@ -57,14 +101,76 @@ public class MultiThreadedInvertedIndex extends InvertedIndex {
       * the partial search given a set of queries
       * 
       * @param queries the queries
-      * @return the TreeSet of results
+      * @param limit   the most results to return, or 0 for all of them
+      * @param bm25    whether to score with BM25
+      * @return the sorted results
+      */
+     @Override
+     public List<QueryEntry> partialSearch(Set<String> queries, int limit, boolean bm25) {
+          indexesLock.readLock().lock();
+          countsLock.readLock().lock();
+          try {
+               return super.partialSearch(queries, limit, bm25);
+          } finally {
+               indexesLock.readLock().unlock();
+               countsLock.readLock().unlock();
+          }
+     }
+
+     /**
+      * the boolean search for a boolean query
+      * 
+      * @param query   the query
+      * @param partial whether words also match the words they are a prefix of
+      * @param limit   the most results to return, or 0 for all of them
+      * @return the sorted results
+      */
+     @Override
+     public List<QueryEntry> booleanSearch(BooleanQuery query, boolean partial, int limit) {
+          indexesLock.readLock().lock();
+          countsLock.readLock().lock();
+          try {
+               return super.booleanSearch(query, partial, limit);
+          } finally {
+               indexesLock.readLock().unlock();
+               countsLock.readLock().unlock();
+          }
+     }
+
+     /**
+      * the fuzzy search for a set of queries
+      * 
+      * @param queries  the queries
+      * @param distance the most edits a matching word can be from a query
+      * @param limit    the most results to return, or 0 for all of them
+      * @param bm25     whether to score with BM25
+      * @return the sorted results
+      */
+     @Override
+     public List<QueryEntry> fuzzySearch(Set<String> queries, int distance, int limit, boolean bm25) {
+          indexesLock.readLock().lock();
+          countsLock.readLock().lock();
+          try {
+               return super.fuzzySearch(queries, distance, limit, bm25);
+          } finally {
+               indexesLock.readLock().unlock();
+               countsLock.readLock().unlock();
+          }
+     }
+
+     /**
+      * the phrase search for a quoted phrase
+      * 
+      * @param phrase the phrase
+      * @param limit  the most results to return, or 0 for all of them
+      * @return the sorted results
       */
      @Override
-     public List<QueryEntry> partialSearch(Set<String> queries) {
+     public List<QueryEntry> phraseSearch(PhraseQuery phrase, int limit) {
           indexesLock.readLock().lock();
           countsLock.readLock().lock();
           try {
-               return super.partialSearch(queries);
+               return super.phraseSearch(phrase, limit);
           } finally {
                indexesLock.readLock().unlock();
                countsLock.readLock().unlock();
@@ -85,6 +191,7 @@ public class MultiThreadedInvertedIndex extends InvertedIndex {
           countsLock.writeLock().lock();
           try {
                super.addIndex(word, location, index);
+               clearPrefixCache();
           } finally {
                indexesLock.writeLock().unlock();
                countsLock.writeLock().unlock();
@@ -97,6 +204,7 @@ public class MultiThreadedInvertedIndex extends InvertedIndex {
           countsLock.writeLock().lock();
           try {
                super.addIndex(word, location, indecies);
+               clearPrefixCache();
           } finally {
                indexesLock.writeLock().unlock();
                countsLock.writeLock().unlock();
@@ -109,12 +217,55 @@ public class MultiThreadedInvertedIndex extends InvertedIndex {
           countsLock.writeLock().lock();
           try {
                super.addIndex(otherIndex);
+               clearPrefixCache();
           } finally {
                indexesLock.writeLock().unlock();
                countsLock.writeLock().unlock();
           }
      }
 
+     @Override
+     public long getVersion() {
+          indexesLock.readLock().lock();
+          try {
+               return super.getVersion();
+          } finally {
+               indexesLock.readLock().unlock();
+          }
+     }
+
+     @Override
+     protected PrefixCache getPrefixCache() {
+          return prefixCache;
+     }
+
+     /**
+      * Clears the prefix cache after an add, if there is one
+      */
+     private void clearPrefixCache() {
+          if (prefixCache != null) {
+               prefixCache.clear();
+          }
+     }
+
+     /**
+      * Creates a read-only copy of this index with compressed postings. Searching
+      * the sealed copy doesn't need any locking.
+      * 
+      * @return the sealed index
+      */
+     @Override
+     public SealedInvertedIndex seal() {
+          indexesLock.readLock().lock();
+          countsLock.readLock().lock();
+          try {
+               return super.seal();
+          } finally {
+               indexesLock.readLock().unlock();
+               countsLock.readLock().unlock();
+          }
+     }
+
      /**
       * Returns a list of words in the index
       * 
@@ -260,7 +411,7 @@ public class MultiThreadedInvertedIndex extends InvertedIndex {
      public int getCountsInLocation(String location) {
           countsLock.readLock().lock();
           try {
-               return getCountsInLocation(location);
+               return super.getCountsInLocation(location);
           } finally {
                countsLock.readLock().unlock();
           }
@@ -323,7 +474,7 @@ public class MultiThreadedInvertedIndex extends InvertedIndex {
 
           indexesLock.readLock().lock();
           try {
-               builder.append(super.writeIndex());
+               builder.append(hasPositions() ? super.writeIndex() : "(only frequencies are kept)\n");
           } finally {
                indexesLock.readLock().unlock();
           }
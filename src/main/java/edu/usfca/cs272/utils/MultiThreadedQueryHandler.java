@@ -7,12 +7,10 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
 
 /**
  * Class responsible for handling the Queries
@@ -33,6 +31,36 @@ public class MultiThreadedQueryHandler implements QueryHandlerInterface {
       */
      private final Function<Set<String>, List<QueryEntry>> searchFunction;
 
+     /**
+      * The inverted index
+      */
+     private final InvertedIndex invertedIndex;
+
+     /**
+      * whether the search includes partial matches
+      */
+     private final boolean partial;
+
+     /**
+      * whether the search scores with BM25
+      */
+     private final boolean bm25;
+
+     /**
+      * the most edits a fuzzy match can be from a query, or 0 for no fuzzy search
+      */
+     private final int fuzzy;
+
+     /**
+      * whether query lines may be quoted phrases or boolean expressions
+      */
+     private final boolean syntax;
+
+     /**
+      * the cache of the results of searches that weren't in the query
+      */
+     private final ResultCache resultCache;
+
      /**
       * the lock for the query
       */
@@ -51,10 +79,106 @@ public class MultiThreadedQueryHandler implements QueryHandlerInterface {
       * @param workQueue     the work queue
       */
      public MultiThreadedQueryHandler(InvertedIndex invertedIndex, boolean partial, WorkQueue workQueue) {
+          this(invertedIndex, partial, workQueue, MultiReaderLock::new);
+     }
+
+     /**
+      * The constructor for a QueryHandler with a choice of lock, such as
+      * {@link ReaderBiasedLock} for a server that mostly reads the results
+      * 
+      * @param invertedIndex the invertedIndex
+      * @param partial       whether the search should include partial matches
+      * @param workQueue     the work queue
+      * @param locks         creates the lock for the query
+      */
+     public MultiThreadedQueryHandler(InvertedIndex invertedIndex, boolean partial, WorkQueue workQueue,
+               Supplier<MultiReaderLock> locks) {
+          this(invertedIndex, partial, workQueue, locks, false);
+     }
+
+     /**
+      * The constructor for a QueryHandler with a choice of lock that may score
+      * with BM25
+      * 
+      * @param invertedIndex the invertedIndex
+      * @param partial       whether the search should include partial matches
+      * @param workQueue     the work queue
+      * @param locks         creates the lock for the query
+      * @param bm25          whether the search should score with BM25
+      */
+     public MultiThreadedQueryHandler(InvertedIndex invertedIndex, boolean partial, WorkQueue workQueue,
+               Supplier<MultiReaderLock> locks, boolean bm25) {
+          this(invertedIndex, partial, workQueue, locks, bm25, 0);
+     }
+
+     /**
+      * The constructor for a QueryHandler with a choice of lock that may score
+      * with BM25 and may match words with typos
+      * 
+      * @param invertedIndex the invertedIndex
+      * @param partial       whether the search should include partial matches
+      * @param workQueue     the work queue
+      * @param locks         creates the lock for the query
+      * @param bm25          whether the search should score with BM25
+      * @param fuzzy         the most edits a fuzzy match can be from a query, or 0
+      *                      for no fuzzy search
+      */
+     public MultiThreadedQueryHandler(InvertedIndex invertedIndex, boolean partial, WorkQueue workQueue,
+               Supplier<MultiReaderLock> locks, boolean bm25, int fuzzy) {
+          this(invertedIndex, partial, workQueue, locks, bm25, fuzzy, false);
+     }
+
+     /**
+      * The constructor for a QueryHandler with a choice of lock that may score
+      * with BM25, may match words with typos and may parse quoted phrases and
+      * boolean expressions in the query lines
+      * 
+      * @param invertedIndex the invertedIndex
+      * @param partial       whether the search should include partial matches
+      * @param workQueue     the work queue
+      * @param locks         creates the lock for the query
+      * @param bm25          whether the search should score with BM25
+      * @param fuzzy         the most edits a fuzzy match can be from a query, or 0
+      *                      for no fuzzy search
+      * @param syntax        whether query lines may be quoted phrases or boolean
+      *                      expressions
+      */
+     public MultiThreadedQueryHandler(InvertedIndex invertedIndex, boolean partial, WorkQueue workQueue,
+               Supplier<MultiReaderLock> locks, boolean bm25, int fuzzy, boolean syntax) {
           this.workQueue = workQueue;
-          queryLock = new MultiReaderLock();
+          this.invertedIndex = invertedIndex;
+          this.partial = partial;
+          this.bm25 = bm25;
+          this.fuzzy = fuzzy;
+          this.syntax = syntax;
+          queryLock = locks.get();
           query = new TreeMap<>();
-          searchFunction = partial ? invertedIndex::partialSearch : invertedIndex::exactSearch;
+          resultCache = new ResultCache(invertedIndex);
+          searchFunction = queries -> search(queries, 0);
+     }
+
+     /**
+      * Gets the cache of the results of searches that weren't in the query, which
+      * counts how often it was used
+      * 
+      * @return the cache
+      */
+     public ResultCache getResultCache() {
+          return resultCache;
+     }
+
+     /**
+      * Searches the index for a set of stems the way this handler was set up to
+      * 
+      * @param stems the stems
+      * @param limit the most results to return, or 0 for all of them
+      * @return the sorted results
+      */
+     private List<QueryEntry> search(Set<String> stems, int limit) {
+          if (fuzzy > 0) {
+               return invertedIndex.fuzzySearch(stems, fuzzy, limit, bm25);
+          }
+          return invertedIndex.search(stems, partial, limit, bm25);
      }
 
      /**
@@ -86,10 +210,20 @@ public class MultiThreadedQueryHandler implements QueryHandlerInterface {
       * @param stemmer the stemmer
       */
      @Override
-     public void handleQueries(String line, SnowballStemmer stemmer) {
+     public void handleQueries(String line, Stemmer stemmer) {
           workQueue.execute(new QueryTask(line));
      }
 
+     @Override
+     public boolean hasSyntax() {
+          return syntax;
+     }
+
+     @Override
+     public boolean hasPositions() {
+          return invertedIndex.hasPositions();
+     }
+
      /**
       * Writes the query to a file
       * 
@@ -140,6 +274,19 @@ public class MultiThreadedQueryHandler implements QueryHandlerInterface {
       */
      @Override
      public List<QueryEntry> getQueryResults(Set<String> stems, String key) {
+          return getQueryResults(stems, key, 0);
+     }
+
+     /**
+      * Gets the best query results from a list of stems and the key
+      * 
+      * @param stems the stems
+      * @param key   the key
+      * @param limit the most results to return, or 0 for all of them
+      * @return the list of query entry matches
+      */
+     @Override
+     public List<QueryEntry> getQueryResults(Set<String> stems, String key, int limit) {
           if (stems.size() > 0) {
                List<QueryEntry> queries;
 
@@ -151,25 +298,31 @@ public class MultiThreadedQueryHandler implements QueryHandlerInterface {
                }
 
                if (queries == null) {
-                    queries = searchFunction.apply(stems);
+                    queries = resultCache.get(key, limit, () -> search(stems, limit));
                }
 
-               return queries;
+               return QueryHandlerInterface.limit(queries, limit);
           }
 
           return Collections.emptyList();
      }
 
-     /**
-      * gets the query results for a line of search and a stemmer
-      * 
-      * @param line    the line of search
-      * @param stemmer the stemmer
-      * @return the list of queries
-      */
-     public List<QueryEntry> getQueryResults(String line, Stemmer stemmer) {
-          Set<String> queries = FileStemmer.uniqueStems(line, stemmer);
-          return getQueryResults(queries, QueryHandlerInterface.getSearchFromWords(queries));
+     @Override
+     public List<QueryEntry> getQueryResults(ParsedQuery parsed, int limit) {
+          List<QueryEntry> queries;
+
+          queryLock.readLock().lock();
+          try {
+               queries = query.get(parsed.toString());
+          } finally {
+               queryLock.readLock().unlock();
+          }
+
+          if (queries == null) {
+               queries = resultCache.get(parsed.toString(), limit, () -> parsed.search(invertedIndex, partial, limit));
+          }
+
+          return QueryHandlerInterface.limit(queries, limit);
      }
 
      @Override
@@ -178,7 +331,8 @@ public class MultiThreadedQueryHandler implements QueryHandlerInterface {
      }
 
      /**
-      * The task for a query
+      * The task for a query. A phrase that the index can't search is skipped with
+      * a message, like {@link QueryHandler} does.
       */
      public class QueryTask implements Runnable {
           /**
@@ -198,11 +352,20 @@ public class MultiThreadedQueryHandler implements QueryHandlerInterface {
 
           @Override
           public void run() {
-               final Set<String> val = FileStemmer.uniqueStems(line, new SnowballStemmer(ENGLISH));
-               final String key = QueryHandlerInterface.getSearchFromWords(val);
+               final Stemmer stemmer = StemCache.SHARED;
+               final ParsedQuery parsed;
+               try {
+                    parsed = parseQuery(line, stemmer);
+               } catch (UnsupportedOperationException e) {
+                    System.out.println(e.getMessage() + ": " + line);
+                    return;
+               }
+               final Set<String> val = parsed == null ? FileStemmer.uniqueStems(line, stemmer) : null;
+               final String key = parsed == null ? QueryHandlerInterface.getSearchFromWords(val) : parsed.toString();
 
                if (key.length() > 0) {
-                    List<QueryEntry> queryResults = getQueryResults(val, key);
+                    List<QueryEntry> queryResults = parsed == null ? getQueryResults(val, key)
+                              : getQueryResults(parsed, 0);
                     queryLock.writeLock().lock();
                     try {
                          query.put(key, queryResults);
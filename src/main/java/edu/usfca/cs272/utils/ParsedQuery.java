@@ -0,0 +1,40 @@
+package edu.usfca.cs272.utils;
+
+import java.util.List;
+
+import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * A query line with its own syntax, like a quoted phrase or a boolean
+ * expression, that is searched differently than a plain list of words. The
+ * {@code toString()} of a parsed query is its key in the query results.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public interface ParsedQuery {
+
+     /**
+      * Searches an index for the query
+      *
+      * @param index   the index
+      * @param partial whether words also match the words they are a prefix of
+      * @param limit   the most results to return, or 0 for all of them
+      * @return the sorted results
+      */
+     public List<QueryEntry> search(InvertedIndex index, boolean partial, int limit);
+
+     /**
+      * Parses a query line if it has a syntax of its own
+      *
+      * @param line    the query line
+      * @param stemmer the stemmer
+      * @return the parsed query, or null if the line is a plain list of words
+      */
+     public static ParsedQuery parse(String line, Stemmer stemmer) {
+          ParsedQuery phrase = PhraseQuery.parse(line, stemmer);
+          return phrase != null ? phrase : BooleanQuery.parse(line, stemmer);
+     }
+}
@@ -0,0 +1,107 @@
+package edu.usfca.cs272.utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * A query line that is a quoted phrase, like {@code "inverted index"}, or a
+ * quoted phrase followed by a distance, like {@code "inverted index"~3}. A
+ * phrase only matches the words next to each other in that order. With a
+ * distance, it matches wherever every other word is within that many words of
+ * the first one, in any order. Phrases always match whole words, even when the
+ * other queries are partial.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class PhraseQuery implements ParsedQuery {
+
+     /**
+      * the pattern of a quoted phrase with an optional distance
+      */
+     public static final Pattern PHRASE_REGEX = Pattern.compile("^\\s*\"([^\"]*)\"\\s*(?:~\\s*(\\d{1,9}))?\\s*$");
+
+     /**
+      * the stems of the phrase in order
+      */
+     private final List<String> words;
+
+     /**
+      * the distance, or 0 for an exact phrase
+      */
+     private final int distance;
+
+     /**
+      * Creates a phrase query
+      *
+      * @param words    the stems of the phrase in order
+      * @param distance the distance, or 0 for an exact phrase
+      */
+     public PhraseQuery(List<String> words, int distance) {
+          this.words = Collections.unmodifiableList(words);
+          this.distance = distance;
+     }
+
+     /**
+      * Parses a query line if it is a phrase
+      *
+      * @param line    the query line
+      * @param stemmer the stemmer
+      * @return the phrase, or null if the line isn't a phrase or has no words
+      */
+     public static PhraseQuery parse(String line, Stemmer stemmer) {
+          Matcher matcher = PHRASE_REGEX.matcher(line);
+          if (!matcher.matches()) {
+               return null;
+          }
+
+          List<String> words = FileStemmer.listStems(matcher.group(1), stemmer);
+          if (words.isEmpty()) {
+               return null;
+          }
+
+          int distance = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : 0;
+          return new PhraseQuery(words, distance);
+     }
+
+     @Override
+     public List<QueryEntry> search(InvertedIndex index, boolean partial, int limit) {
+          return index.phraseSearch(this, limit);
+     }
+
+     /**
+      * Gets the stems of the phrase in order
+      *
+      * @return the stems
+      */
+     public List<String> getWords() {
+          return words;
+     }
+
+     /**
+      * Gets the distance
+      *
+      * @return the distance, or 0 for an exact phrase
+      */
+     public int getDistance() {
+          return distance;
+     }
+
+     /**
+      * Gets the key of the phrase in the query results, which quotes the stems
+      * with single quotes so the key doesn't need escaping
+      *
+      * @return the key
+      */
+     @Override
+     public String toString() {
+          String phrase = "'" + String.join(" ", words) + "'";
+          return distance > 0 ? phrase + "~" + distance : phrase;
+     }
+}
@@ -0,0 +1,360 @@
+package edu.usfca.cs272.utils;
+
+import java.util.Arrays;
+
+/**
+ * The postings of a single word: the sorted document ids the word appears in
+ * and the positions of the word in each of those documents. Documents are
+ * added in increasing id order while building, so adding a new document is an
+ * amortized O(1) append.
+ *
+ * <p>
+ * A posting list can instead keep only the number of times the word appears in
+ * each document as a primitive int, for indexes that are only used for ranked
+ * searches. Asking such a list for positions throws an
+ * {@link UnsupportedOperationException}. Such a list can't tell a position
+ * that is added again from a new one, so every add counts: adding the same
+ * words of a document twice doubles its frequency, where a list with positions
+ * keeps each position once. That is what lets the ranges of a split file be
+ * added one after another, but a document should only be read into such a list
+ * once.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class PostingList {
+
+     /**
+      * the initial capacity of the arrays
+      */
+     private static final int INITIAL_CAPACITY = 2;
+
+     /**
+      * the sorted document ids, only the first size elements are used
+      */
+     private int[] documents;
+
+     /**
+      * the positions in each document, parallel to documents, or null if only
+      * frequencies are kept
+      */
+     private PositionList[] positions;
+
+     /**
+      * the frequency in each document, parallel to documents, or null if
+      * positions are kept
+      */
+     private int[] frequencies;
+
+     /**
+      * the number of documents
+      */
+     private int size;
+
+     /**
+      * Creates an empty posting list that keeps positions
+      */
+     public PostingList() {
+          this(true);
+     }
+
+     /**
+      * Creates an empty posting list
+      *
+      * @param positions whether to keep positions or only frequencies
+      */
+     public PostingList(boolean positions) {
+          documents = new int[INITIAL_CAPACITY];
+          if (positions) {
+               this.positions = new PositionList[INITIAL_CAPACITY];
+          } else {
+               this.frequencies = new int[INITIAL_CAPACITY];
+          }
+          size = 0;
+     }
+
+     /**
+      * Checks whether the list keeps positions
+      *
+      * @return false if the list only keeps frequencies
+      */
+     public boolean hasPositions() {
+          return positions != null;
+     }
+
+     /**
+      * Gets the positions of a document, adding an empty list for the document if
+      * it isn't in the postings yet
+      *
+      * @param document the document id
+      * @return the positions
+      * @throws UnsupportedOperationException if the list only keeps frequencies
+      */
+     public PositionList add(int document) {
+          checkPositions();
+          int index = insert(document);
+          if (positions[index] == null) {
+               positions[index] = new PositionList();
+          }
+          return positions[index];
+     }
+
+     /**
+      * Adds a position of the word in a document. If the list only keeps
+      * frequencies, the frequency is counted up without checking the position.
+      *
+      * @param document the document id
+      * @param position the position
+      * @return whether the position was added
+      */
+     public boolean add(int document, int position) {
+          if (positions == null) {
+               int index = insert(document);
+               frequencies[index]++;
+               return true;
+          }
+          return add(document).add(position);
+     }
+
+     /**
+      * Puts the positions for a document. If the document already has positions
+      * they are merged together.
+      *
+      * @param document  the document id
+      * @param locations the positions, which may be kept by this list
+      * @return the number of positions that were added
+      * @throws UnsupportedOperationException if the list only keeps frequencies
+      */
+     public int add(int document, PositionList locations) {
+          checkPositions();
+          int index = insert(document);
+          if (positions[index] == null) {
+               positions[index] = locations;
+               return locations.size();
+          }
+          return positions[index].addAll(locations);
+     }
+
+     /**
+      * Adds the current document of a cursor, with the positions if this list
+      * keeps them or else only the frequency
+      *
+      * @param document the document id in this list
+      * @param cursor   the cursor on the document to add
+      * @return the number of positions that were added
+      */
+     public int add(int document, PostingsCursor cursor) {
+          if (positions == null) {
+               int index = insert(document);
+               frequencies[index] += cursor.frequency();
+               return cursor.frequency();
+          }
+          return add(document, cursor.positions());
+     }
+
+     /**
+      * Moves every position of every document up by an offset. A list that only
+      * keeps frequencies doesn't change.
+      *
+      * @param offset the number to add to every position
+      */
+     public void shift(int offset) {
+          if (positions != null) {
+               for (int index = 0; index < size; index++) {
+                    positions[index].shift(offset);
+               }
+          }
+     }
+
+     /**
+      * Gets the positions of a document
+      *
+      * @param document the document id
+      * @return the positions or null if the document isn't in the postings
+      * @throws UnsupportedOperationException if the list only keeps frequencies
+      */
+     public PositionList get(int document) {
+          checkPositions();
+          int index = indexOf(document);
+          return index >= 0 ? positions[index] : null;
+     }
+
+     /**
+      * Gets the index of a document in the postings
+      *
+      * @param document the document id
+      * @return the index or a negative number if the document isn't in the
+      *         postings
+      */
+     public int indexOf(int document) {
+          if (size > 0 && documents[size - 1] == document) {
+               return size - 1;
+          }
+          return Arrays.binarySearch(documents, 0, size, document);
+     }
+
+     /**
+      * Gets the document id at an index
+      *
+      * @param index the index
+      * @return the document id
+      */
+     public int document(int index) {
+          return documents[index];
+     }
+
+     /**
+      * Gets the positions at an index
+      *
+      * @param index the index
+      * @return the positions
+      * @throws UnsupportedOperationException if the list only keeps frequencies
+      */
+     public PositionList positions(int index) {
+          checkPositions();
+          return positions[index];
+     }
+
+     /**
+      * Gets the amount of times the word appears at an index
+      *
+      * @param index the index
+      * @return the frequency
+      */
+     public int frequency(int index) {
+          return positions != null ? positions[index].size() : frequencies[index];
+     }
+
+     /**
+      * Gets the number of documents
+      *
+      * @return the number of documents
+      */
+     public int size() {
+          return size;
+     }
+
+     /**
+      * Creates a cursor over the postings
+      *
+      * @return the cursor
+      */
+     public PostingsCursor cursor() {
+          return new PostingsCursor() {
+               private int index = -1;
+
+               @Override
+               public boolean next() {
+                    if (index < size) {
+                         index++;
+                    }
+                    return index < size;
+               }
+
+               /**
+                * Gallops ahead in doubling steps until it passes the target and then
+                * binary searches the last step, so short skips stay cheap and long
+                * skips only take a logarithmic number of steps
+                */
+               @Override
+               public boolean advance(int target) {
+                    if (index >= size) {
+                         return false;
+                    }
+
+                    int low = index + 1;
+                    int high = low;
+                    int step = 1;
+                    while (high < size && documents[high] < target) {
+                         low = high + 1;
+                         high += step;
+                         step <<= 1;
+                    }
+
+                    int found = Arrays.binarySearch(documents, low, Math.min(high + 1, size), target);
+                    index = found >= 0 ? found : -(found + 1);
+                    return index < size;
+               }
+
+               @Override
+               public int document() {
+                    return documents[index];
+               }
+
+               @Override
+               public int frequency() {
+                    return PostingList.this.frequency(index);
+               }
+
+               @Override
+               public PositionList positions() {
+                    return PostingList.this.positions(index);
+               }
+
+               @Override
+               public int size() {
+                    return size;
+               }
+          };
+     }
+
+     /**
+      * Finds or makes the slot for a document
+      *
+      * @param document the document id
+      * @return the index of the slot
+      */
+     private int insert(int document) {
+          if (size == 0 || document > documents[size - 1]) {
+               grow();
+               documents[size] = document;
+               return size++;
+          }
+
+          int index = indexOf(document);
+          if (index >= 0) {
+               return index;
+          }
+
+          index = -(index + 1);
+          grow();
+          System.arraycopy(documents, index, documents, index + 1, size - index);
+          documents[index] = document;
+          if (positions != null) {
+               System.arraycopy(positions, index, positions, index + 1, size - index);
+               positions[index] = null;
+          } else {
+               System.arraycopy(frequencies, index, frequencies, index + 1, size - index);
+               frequencies[index] = 0;
+          }
+          size++;
+          return index;
+     }
+
+     /**
+      * Makes room for one more document
+      */
+     private void grow() {
+          if (size == documents.length) {
+               int capacity = size + (size >> 1) + 1;
+               documents = Arrays.copyOf(documents, capacity);
+               if (positions != null) {
+                    positions = Arrays.copyOf(positions, capacity);
+               } else {
+                    frequencies = Arrays.copyOf(frequencies, capacity);
+               }
+          }
+     }
+
+     /**
+      * Makes sure the list keeps positions
+      *
+      * @throws UnsupportedOperationException if the list only keeps frequencies
+      */
+     private void checkPositions() {
+          if (positions == null) {
+               throw new UnsupportedOperationException("Only frequencies are kept for this index");
+          }
+     }
+}
@@ -0,0 +1,86 @@
+package edu.usfca.cs272.utils;
+
+/**
+ * Walks the postings of a single word one document at a time, in increasing
+ * document id order. A new cursor starts before the first document, so
+ * {@link #next()} has to be called before reading the first document.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public interface PostingsCursor {
+
+     /**
+      * Moves to the next document
+      *
+      * @return false if there are no more documents
+      */
+     public boolean next();
+
+     /**
+      * Moves to the first document with an id greater than or equal to the target.
+      * The target has to be greater than the current document. Implementations
+      * should skip over documents without reading them when they can.
+      *
+      * @param target the target document id
+      * @return false if there are no more documents
+      */
+     public default boolean advance(int target) {
+          while (next()) {
+               if (document() >= target) {
+                    return true;
+               }
+          }
+          return false;
+     }
+
+     /**
+      * Gets the current document id
+      *
+      * @return the document id
+      */
+     public int document();
+
+     /**
+      * Gets the amount of times the word appears in the current document
+      *
+      * @return the frequency
+      */
+     public int frequency();
+
+     /**
+      * Gets the positions of the word in the current document
+      *
+      * @return the positions
+      */
+     public PositionList positions();
+
+     /**
+      * Gets the last document id of the block of postings the cursor is on.
+      * Cursors that don't split their postings into blocks are one big block.
+      *
+      * @return the last document id of the block
+      */
+     public default int blockLast() {
+          return Integer.MAX_VALUE;
+     }
+
+     /**
+      * Gets the highest score the word gives any document in the block of postings
+      * the cursor is on, which is its frequency over the word count of that
+      * document. Cursors that don't keep it can't rule any block out.
+      *
+      * @return the highest score in the block
+      */
+     public default double blockMaxScore() {
+          return Double.POSITIVE_INFINITY;
+     }
+
+     /**
+      * Gets the total number of documents in the postings
+      *
+      * @return the number of documents
+      */
+     public int size();
+}
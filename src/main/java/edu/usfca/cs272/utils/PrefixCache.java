@@ -0,0 +1,185 @@
+package edu.usfca.cs272.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * A cache of what partial searches found for short prefixes. A prefix like
+ * {@code co} can expand to thousands of words, and merging all of their
+ * postings costs far more than an exact search, even though the answer never
+ * changes until the index does. Only prefixes that expand to at least
+ * {@link #MIN_WORDS} words are kept, as the documents they match with the
+ * matches, and the BM25 scores when they were asked for, of each one.
+ *
+ * <p>
+ * The cache holds at most a fixed number of matched documents across every
+ * prefix, and drops the prefixes that were used least recently to make room.
+ * It is safe to use from many threads, and an index that changes must
+ * {@link #clear()} it whenever it does.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class PrefixCache {
+
+     /**
+      * the default number of matched documents kept across every prefix
+      */
+     public static final int DEFAULT_CAPACITY = 1 << 20;
+
+     /**
+      * the fewest words a prefix has to expand to for it to be kept
+      */
+     public static final int MIN_WORDS = 16;
+
+     /**
+      * the most matched documents kept across every prefix
+      */
+     private final int capacity;
+
+     /**
+      * the expansions by prefix, from least to most recently used
+      */
+     private final LinkedHashMap<String, Expansion> expansions;
+
+     /**
+      * the number of matched documents kept across every prefix
+      */
+     private long size;
+
+     /**
+      * Creates a cache that keeps {@link #DEFAULT_CAPACITY} matched documents
+      */
+     public PrefixCache() {
+          this(DEFAULT_CAPACITY);
+     }
+
+     /**
+      * Creates a cache
+      *
+      * @param capacity the most matched documents kept across every prefix
+      */
+     public PrefixCache(int capacity) {
+          this.capacity = capacity;
+          this.expansions = new LinkedHashMap<>(16, 0.75f, true);
+          this.size = 0;
+     }
+
+     /**
+      * Gets the expansion of a prefix
+      *
+      * @param prefix the prefix
+      * @param scored whether the BM25 scores are needed
+      * @return the expansion, or null if it isn't kept
+      */
+     public synchronized Expansion get(String prefix, boolean scored) {
+          Expansion expansion = expansions.get(prefix);
+          return expansion != null && (!scored || expansion.scores != null) ? expansion : null;
+     }
+
+     /**
+      * Keeps the expansion of a prefix, dropping the least recently used
+      * prefixes if there isn't room
+      *
+      * @param prefix    the prefix
+      * @param expansion the expansion
+      */
+     public synchronized void put(String prefix, Expansion expansion) {
+          if (expansion.documents.length > capacity) {
+               return;
+          }
+
+          Expansion old = expansions.put(prefix, expansion);
+          if (old != null) {
+               size -= old.documents.length;
+          }
+          size += expansion.documents.length;
+
+          Iterator<Entry<String, Expansion>> iterator = expansions.entrySet().iterator();
+          while (size > capacity) {
+               size -= iterator.next().getValue().documents.length;
+               iterator.remove();
+          }
+     }
+
+     /**
+      * Drops every prefix
+      */
+     public synchronized void clear() {
+          if (size > 0) {
+               expansions.clear();
+               size = 0;
+          }
+     }
+
+     /**
+      * Every document a prefix matches, with its matches and scores
+      */
+     public static class Expansion {
+          /**
+           * the matched document ids in order
+           */
+          private final int[] documents;
+
+          /**
+           * the matches of each document
+           */
+          private final int[] matches;
+
+          /**
+           * the BM25 scores of each document, or null
+           */
+          private final double[] scores;
+
+          /**
+           * Creates an expansion from the matches and scores of every document
+           *
+           * @param matches the matches indexed by document id
+           * @param scores  the BM25 scores indexed by document id, or null
+           */
+          public Expansion(int[] matches, double[] scores) {
+               int count = 0;
+               for (int match : matches) {
+                    if (match > 0) {
+                         count++;
+                    }
+               }
+
+               this.documents = new int[count];
+               this.matches = new int[count];
+               this.scores = scores != null ? new double[count] : null;
+
+               int next = 0;
+               for (int document = 0; document < matches.length; document++) {
+                    if (matches[document] > 0) {
+                         this.documents[next] = document;
+                         this.matches[next] = matches[document];
+                         if (scores != null) {
+                              this.scores[next] = scores[document];
+                         }
+                         next++;
+                    }
+               }
+          }
+
+          /**
+           * Adds the matches and scores to those of a search
+           *
+           * @param matches the matches so far indexed by document id
+           * @param scores  the BM25 scores so far indexed by document id, or null
+           */
+          public void addTo(int[] matches, double[] scores) {
+               for (int i = 0; i < documents.length; i++) {
+                    matches[documents[i]] += this.matches[i];
+               }
+
+               if (scores != null) {
+                    for (int i = 0; i < documents.length; i++) {
+                         scores[documents[i]] += this.scores[i];
+                    }
+               }
+          }
+     }
+}
@@ -9,9 +9,7 @@ import java.util.TreeMap;
 import java.util.function.Function;
 
 import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+import opennlp.tools.stemmer.Stemmer;
 
 /**
  * Class responsible for handling the Queries
@@ -24,7 +22,7 @@ public class QueryHandler implements QueryHandlerInterface {
      /**
       * the stemmer
       */
-     private final SnowballStemmer stemmer;
+     private final Stemmer stemmer;
 
      /**
       * The query
@@ -36,6 +34,36 @@ public class QueryHandler implements QueryHandlerInterface {
       */
      private final Function<Set<String>, List<QueryEntry>> searchFunction;
 
+     /**
+      * The inverted index
+      */
+     private final InvertedIndex invertedIndex;
+
+     /**
+      * whether the search includes partial matches
+      */
+     private final boolean partial;
+
+     /**
+      * whether the search scores with BM25
+      */
+     private final boolean bm25;
+
+     /**
+      * the most edits a fuzzy match can be from a query, or 0 for no fuzzy search
+      */
+     private final int fuzzy;
+
+     /**
+      * whether query lines may be quoted phrases or boolean expressions
+      */
+     private final boolean syntax;
+
+     /**
+      * the cache of the results of searches that weren't in the query
+      */
+     private final ResultCache resultCache;
+
      /**
       * The constructor for a QueryHandler
       * 
@@ -43,9 +71,57 @@ public class QueryHandler implements QueryHandlerInterface {
       * @param partial       whether the search should include partial matches
       */
      public QueryHandler(InvertedIndex invertedIndex, boolean partial) {
+          this(invertedIndex, partial, false);
+     }
+
+     /**
+      * The constructor for a QueryHandler that may score with BM25
+      * 
+      * @param invertedIndex the invertedIndex
+      * @param partial       whether the search should include partial matches
+      * @param bm25          whether the search should score with BM25
+      */
+     public QueryHandler(InvertedIndex invertedIndex, boolean partial, boolean bm25) {
+          this(invertedIndex, partial, bm25, 0);
+     }
+
+     /**
+      * The constructor for a QueryHandler that may score with BM25 and may match
+      * words with typos
+      * 
+      * @param invertedIndex the invertedIndex
+      * @param partial       whether the search should include partial matches
+      * @param bm25          whether the search should score with BM25
+      * @param fuzzy         the most edits a fuzzy match can be from a query, or 0
+      *                      for no fuzzy search
+      */
+     public QueryHandler(InvertedIndex invertedIndex, boolean partial, boolean bm25, int fuzzy) {
+          this(invertedIndex, partial, bm25, fuzzy, false);
+     }
+
+     /**
+      * The constructor for a QueryHandler that may score with BM25, may match
+      * words with typos and may parse quoted phrases and boolean expressions in
+      * the query lines
+      * 
+      * @param invertedIndex the invertedIndex
+      * @param partial       whether the search should include partial matches
+      * @param bm25          whether the search should score with BM25
+      * @param fuzzy         the most edits a fuzzy match can be from a query, or 0
+      *                      for no fuzzy search
+      * @param syntax        whether query lines may be quoted phrases or boolean
+      *                      expressions
+      */
+     public QueryHandler(InvertedIndex invertedIndex, boolean partial, boolean bm25, int fuzzy, boolean syntax) {
+          this.invertedIndex = invertedIndex;
+          this.partial = partial;
+          this.bm25 = bm25;
+          this.fuzzy = fuzzy;
+          this.syntax = syntax;
           query = new TreeMap<>();
-          searchFunction = partial ? invertedIndex::partialSearch : invertedIndex::exactSearch;
-          stemmer = new SnowballStemmer(ENGLISH);
+          resultCache = new ResultCache(invertedIndex);
+          searchFunction = queries -> search(queries, 0);
+          stemmer = StemCache.SHARED;
      }
 
      /**
@@ -59,13 +135,28 @@ public class QueryHandler implements QueryHandlerInterface {
      }
 
      /**
-      * handles the queries given a line of search and a stemmer
+      * handles the queries given a line of search and a stemmer. A phrase that
+      * the index can't search is skipped with a message, and the other lines are
+      * still searched.
       * 
       * @param line    the line
       * @param stemmer the stemmer
       */
      @Override
-     public void handleQueries(String line, SnowballStemmer stemmer) {
+     public void handleQueries(String line, Stemmer stemmer) {
+          ParsedQuery parsed;
+          try {
+               parsed = parseQuery(line, stemmer);
+          } catch (UnsupportedOperationException e) {
+               System.out.println(e.getMessage() + ": " + line);
+               return;
+          }
+
+          if (parsed != null) {
+               query.put(parsed.toString(), getQueryResults(parsed, 0));
+               return;
+          }
+
           Set<String> queries = FileStemmer.uniqueStems(line, stemmer);
           if (queries.size() > 0) {
                String key = QueryHandlerInterface.getSearchFromWords(queries);
@@ -73,6 +164,16 @@ public class QueryHandler implements QueryHandlerInterface {
           }
      }
 
+     @Override
+     public boolean hasSyntax() {
+          return syntax;
+     }
+
+     @Override
+     public boolean hasPositions() {
+          return invertedIndex.hasPositions();
+     }
+
      /**
       * Writes the query to a file
       * 
@@ -119,15 +220,55 @@ public class QueryHandler implements QueryHandlerInterface {
       */
      @Override
 	public List<QueryEntry> getQueryResults(Set<String> stems, String key) {
+          return getQueryResults(stems, key, 0);
+     }
+
+     @Override
+     public List<QueryEntry> getQueryResults(Set<String> stems, String key, int limit) {
           List<QueryEntry> queries;
 
           queries = query.get(key);
 
           if (queries == null) {
-               queries = searchFunction.apply(stems);
+               queries = resultCache.get(key, limit, () -> search(stems, limit));
+          }
+
+          return QueryHandlerInterface.limit(queries, limit);
+     }
+
+     @Override
+     public List<QueryEntry> getQueryResults(ParsedQuery parsed, int limit) {
+          List<QueryEntry> queries = query.get(parsed.toString());
+
+          if (queries == null) {
+               queries = resultCache.get(parsed.toString(), limit, () -> parsed.search(invertedIndex, partial, limit));
           }
 
-          return queries;
+          return QueryHandlerInterface.limit(queries, limit);
+     }
+
+     /**
+      * Gets the cache of the results of searches that weren't in the query, which
+      * counts how often it was used
+      * 
+      * @return the cache
+      */
+     public ResultCache getResultCache() {
+          return resultCache;
+     }
+
+     /**
+      * Searches the index for a set of stems the way this handler was set up to
+      * 
+      * @param stems the stems
+      * @param limit the most results to return, or 0 for all of them
+      * @return the sorted results
+      */
+     private List<QueryEntry> search(Set<String> stems, int limit) {
+          if (fuzzy > 0) {
+               return invertedIndex.fuzzySearch(stems, fuzzy, limit, bm25);
+          }
+          return invertedIndex.search(stems, partial, limit, bm25);
      }
 
      /**
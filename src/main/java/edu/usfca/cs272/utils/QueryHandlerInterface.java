@@ -12,9 +12,7 @@ import java.util.TreeSet;
 import java.util.function.Function;
 
 import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+import opennlp.tools.stemmer.Stemmer;
 
 /**
  * QueryHandlerInterface
@@ -50,7 +48,7 @@ public interface QueryHandlerInterface {
       * @param line the line
       * @param stemmer the stemmer
       */
-     public void handleQueries(String line, SnowballStemmer stemmer);
+     public void handleQueries(String line, Stemmer stemmer);
      
      /**
       * gets the concatenated String of the words set
@@ -83,6 +81,52 @@ public interface QueryHandlerInterface {
       * @return the query lines
       */
      public Set<String> getQueryLines();
+
+     /**
+      * whether the lines of a query file may be quoted phrases or boolean
+      * expressions, instead of always being plain lists of words
+      * 
+      * @return true if query lines are parsed
+      */
+     public boolean hasSyntax();
+
+     /**
+      * whether the index keeps positions, which phrase queries need
+      * 
+      * @return true if phrases can be searched
+      */
+     public boolean hasPositions();
+
+     /**
+      * parses a query line if it has a syntax of its own and this handler parses
+      * query lines
+      * 
+      * @param line the line
+      * @param stemmer the stemmer
+      * @return the parsed query, or null if the line is searched as plain words
+      * @throws UnsupportedOperationException if the line is a phrase and the index
+      *                                       only keeps frequencies
+      * @see #hasSyntax()
+      */
+     public default ParsedQuery parseQuery(String line, Stemmer stemmer) {
+          return hasSyntax() ? checkPositions(ParsedQuery.parse(line, stemmer)) : null;
+     }
+
+     /**
+      * rejects a parsed query that is a phrase if the index only keeps
+      * frequencies, before anything is searched
+      * 
+      * @param parsed the parsed query, or null
+      * @return the parsed query
+      * @throws UnsupportedOperationException if the query is a phrase and the
+      *                                       index only keeps frequencies
+      */
+     private ParsedQuery checkPositions(ParsedQuery parsed) {
+          if (parsed instanceof PhraseQuery && !hasPositions()) {
+               throw new UnsupportedOperationException("Phrase queries need positions, which -frequencies doesn't keep");
+          }
+          return parsed;
+     }
      
      /**
       * gets the query results given a line and a stemmer
@@ -91,7 +135,12 @@ public interface QueryHandlerInterface {
       * @param stemmer the stemmer
       * @return the query results
       */
-      public default List<QueryEntry> getQueryResults(String line, SnowballStemmer stemmer) {
+      public default List<QueryEntry> getQueryResults(String line, Stemmer stemmer) {
+          ParsedQuery parsed = parseQuery(line, stemmer);
+          if (parsed != null) {
+               return getQueryResults(parsed, 0);
+          }
+
           TreeSet<String> stems = FileStemmer.uniqueStems(line, stemmer);
 
           if (stems.size() > 0) {
@@ -109,6 +158,63 @@ public interface QueryHandlerInterface {
       * @return the query results
       */
      public List<QueryEntry> getQueryResults(Set<String> stems, String key);
+
+     /**
+      * gets the best query results given a set of stems and the key
+      * 
+      * @param stems the set of stems
+      * @param key the key
+      * @param limit the most results to return, or 0 for all of them
+      * @return the query results
+      */
+     public List<QueryEntry> getQueryResults(Set<String> stems, String key, int limit);
+
+     /**
+      * gets the best results of a parsed query, like a quoted phrase or a boolean
+      * expression, whose key is the parsed query
+      * 
+      * @param parsed the parsed query
+      * @param limit the most results to return, or 0 for all of them
+      * @return the query results
+      */
+     public List<QueryEntry> getQueryResults(ParsedQuery parsed, int limit);
+
+     /**
+      * gets the best query results given a line from a search of the web API,
+      * which may always be a quoted phrase or a boolean expression
+      * 
+      * @param line the line
+      * @param limit the most results to return, or 0 for all of them
+      * @return the query results
+      * @throws UnsupportedOperationException if the line is a phrase and the index
+      *                                       only keeps frequencies
+      */
+     public default List<QueryEntry> getQueryResults(String line, int limit) {
+          Stemmer stemmer = StemCache.SHARED;
+          ParsedQuery parsed = checkPositions(ParsedQuery.parse(line, stemmer));
+          if (parsed != null) {
+               return getQueryResults(parsed, limit);
+          }
+
+          TreeSet<String> stems = FileStemmer.uniqueStems(line, stemmer);
+
+          if (stems.size() > 0) {
+               return getQueryResults(stems, QueryHandlerInterface.getSearchFromWords(stems), limit);
+          }
+
+          return Collections.emptyList();
+     }
+
+     /**
+      * Cuts a sorted list of results down to a limit
+      * 
+      * @param results the sorted results
+      * @param limit the most results to keep, or 0 for all of them
+      * @return the first results
+      */
+     public static List<QueryEntry> limit(List<QueryEntry> results, int limit) {
+          return limit > 0 && results.size() > limit ? results.subList(0, limit) : results;
+     }
      
      /**
       * gets the query results given a line
@@ -117,6 +223,6 @@ public interface QueryHandlerInterface {
       * @return the query results
       */
       public default List<QueryEntry> getQueryResults(String line) {
-          return getQueryResults(line, new SnowballStemmer(ENGLISH));
+          return getQueryResults(line, StemCache.SHARED);
      }
 }
@@ -0,0 +1,309 @@
+package edu.usfca.cs272.utils;
+
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A {@link MultiReaderLock} for workloads that are almost all reads, like
+ * serving searches. Read locks are counted in a fixed number of stripes, each
+ * on its own cache line, instead of in one shared counter behind a monitor.
+ * Every thread is given a stripe the first time it reads, and there are a few
+ * times more stripes than cores, so readers almost never write to memory that
+ * other readers touch and don't slow each other down. Nothing is kept for a
+ * thread once it is gone, so threads that come and go don't make the lock any
+ * bigger.
+ *
+ * <p>
+ * Writing is more expensive in exchange. A writer raises a flag that stops new
+ * readers, then has to check every stripe and wait for its readers to finish.
+ * Like {@link MultiReaderLock}, a thread that already holds the read lock can
+ * take it again even while a writer waits, and the active writer can take
+ * either lock.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class ReaderBiasedLock extends MultiReaderLock {
+
+     /**
+      * The log4j2 logger.
+      */
+     private static final Logger log = LogManager.getLogger();
+
+     /**
+      * the read lock
+      */
+     private final SimpleLock readerLock;
+
+     /**
+      * the write lock
+      */
+     private final SimpleLock writerLock;
+
+     /**
+      * the number of ints from the start of one stripe to the next, so that each
+      * is on its own cache line
+      */
+     private static final int PADDING = 16;
+
+     /**
+      * the number of stripes, a power of two that is at least four times the
+      * number of cores
+      */
+     private static final int STRIPES = Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1)
+               << 1;
+
+     /**
+      * the number of read locks held in each stripe
+      */
+     private final AtomicIntegerArray stripes;
+
+     /**
+      * the stripe to give the next thread that reads
+      */
+     private final AtomicInteger nextStripe;
+
+     /**
+      * the slot of the current thread
+      */
+     private final ThreadLocal<Slot> slot;
+
+     /**
+      * the lock object for writers and for readers waiting on a writer
+      */
+     private final Object lock;
+
+     /**
+      * whether a writer holds or is waiting for the write lock
+      */
+     private volatile boolean writing;
+
+     /**
+      * the thread that holds the write lock
+      */
+     private volatile Thread activeWriter;
+
+     /**
+      * the number of times the active writer holds the write lock
+      */
+     private int writers;
+
+     /**
+      * Initializes a new reader-biased lock.
+      */
+     public ReaderBiasedLock() {
+          readerLock = new ReadLock();
+          writerLock = new WriteLock();
+          stripes = new AtomicIntegerArray(STRIPES * PADDING);
+          nextStripe = new AtomicInteger();
+          slot = ThreadLocal.withInitial(() -> new Slot((nextStripe.getAndIncrement() & (STRIPES - 1)) * PADDING));
+          lock = new Object();
+          writing = false;
+          activeWriter = null;
+          writers = 0;
+     }
+
+     @Override
+     public SimpleLock readLock() {
+          return readerLock;
+     }
+
+     @Override
+     public SimpleLock writeLock() {
+          return writerLock;
+     }
+
+     @Override
+     public int readers() {
+          int readers = 0;
+          for (int stripe = 0; stripe < stripes.length(); stripe += PADDING) {
+               readers += stripes.get(stripe);
+          }
+          return readers;
+     }
+
+     @Override
+     public int writers() {
+          synchronized (lock) {
+               return writers;
+          }
+     }
+
+     @Override
+     public boolean isActiveWriter() {
+          return Thread.currentThread().equals(activeWriter);
+     }
+
+     /**
+      * The stripe and read lock count of one thread, which only that thread uses
+      */
+     private static class Slot {
+          /**
+           * the index of the thread's stripe
+           */
+          private final int stripe;
+
+          /**
+           * the number of read locks the thread holds
+           */
+          private int holds;
+
+          /**
+           * Creates the slot of a thread
+           *
+           * @param stripe the index of the thread's stripe
+           */
+          private Slot(int stripe) {
+               this.stripe = stripe;
+               this.holds = 0;
+          }
+     }
+
+     /**
+      * Used to maintain simultaneous read operations.
+      */
+     private class ReadLock implements SimpleLock {
+          /**
+           * Counts the current thread as reading in its stripe and then checks for
+           * a writer. A writer raises its flag before checking the stripes, so one
+           * of the two always sees the other. If there is a writer the thread steps
+           * back and waits for it, unless it already holds a read lock or is the
+           * writer.
+           */
+          @Override
+          public void lock() {
+               Slot current = slot.get();
+
+               if (current.holds > 0 || isActiveWriter()) {
+                    stripes.incrementAndGet(current.stripe);
+                    current.holds++;
+                    return;
+               }
+
+               try {
+                    while (true) {
+                         stripes.incrementAndGet(current.stripe);
+                         if (!writing) {
+                              current.holds = 1;
+                              return;
+                         }
+
+                         stripes.decrementAndGet(current.stripe);
+                         synchronized (lock) {
+                              lock.notifyAll();
+                              while (writing) {
+                                   lock.wait();
+                              }
+                         }
+                    }
+               } catch (InterruptedException ex) {
+                    log.catching(Level.DEBUG, ex);
+                    Thread.currentThread().interrupt();
+               }
+          }
+
+          /**
+           * Releases one read lock of the current thread and wakes up a waiting
+           * writer if it was the last one in its stripe.
+           *
+           * @throws IllegalStateException if no readers to unlock
+           */
+          @Override
+          public void unlock() throws IllegalStateException {
+               Slot current = slot.get();
+               if (current.holds == 0) {
+                    throw new IllegalStateException("No readers to unlock");
+               }
+
+               current.holds--;
+               if (stripes.decrementAndGet(current.stripe) == 0 && writing) {
+                    synchronized (lock) {
+                         lock.notifyAll();
+                    }
+               }
+          }
+     }
+
+     /**
+      * Used to maintain exclusive write operations.
+      */
+     private class WriteLock implements SimpleLock {
+          /**
+           * Waits for any other writer, raises the writing flag so no new readers
+           * start, and then waits for every stripe to drain.
+           */
+          @Override
+          public void lock() {
+               boolean raised = false;
+
+               try {
+                    synchronized (lock) {
+                         if (isActiveWriter()) {
+                              writers++;
+                              return;
+                         }
+
+                         while (writing) {
+                              lock.wait();
+                         }
+
+                         writing = true;
+                         raised = true;
+
+                         for (int stripe = 0; stripe < stripes.length(); stripe += PADDING) {
+                              while (stripes.get(stripe) > 0) {
+                                   lock.wait();
+                              }
+                         }
+
+                         writers = 1;
+                         activeWriter = Thread.currentThread();
+                    }
+               } catch (InterruptedException ex) {
+                    log.catching(Level.DEBUG, ex);
+                    Thread.currentThread().interrupt();
+
+                    if (raised) {
+                         synchronized (lock) {
+                              writing = false;
+                              lock.notifyAll();
+                         }
+                    }
+               }
+          }
+
+          /**
+           * Releases the write lock and wakes up the waiting readers and writers
+           * once the active writer has released every hold.
+           *
+           * @throws IllegalStateException           if no writers to unlock
+           * @throws ConcurrentModificationException if the current thread is not the
+           *                                         active writer
+           */
+          @Override
+          public void unlock() throws IllegalStateException, ConcurrentModificationException {
+               synchronized (lock) {
+                    if (writers == 0) {
+                         throw new IllegalStateException("No writers to unlock");
+                    }
+
+                    if (!isActiveWriter()) {
+                         throw new ConcurrentModificationException(
+                                   "Unlock called by a thread that does not hold the write lock");
+                    }
+
+                    if (--writers == 0) {
+                         activeWriter = null;
+                         writing = false;
+                         lock.notifyAll();
+                    }
+               }
+          }
+     }
+}
@@ -0,0 +1,134 @@
+package edu.usfca.cs272.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * Class responsible for filling the InvertedIndex by combining the local index
+ * of every file in a parallel reduction instead of adding each one to the
+ * shared index. Local indexes are merged in pairs of the same size, like a
+ * binary tree, by whichever worker finishes the second of each pair, so the
+ * merges run at the same time without touching the shared index. Only the few
+ * partial results left at the end are added to the shared index.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class ReducingFileHandler extends MultiThreadedFileHandler {
+
+     /**
+      * The thread safe inverted index
+      */
+     private final InvertedIndex invertedIndex;
+
+     /**
+      * the partial result waiting for a partner at each level of the tree, where
+      * level n holds the merged indexes of 2<sup>n</sup> files
+      */
+     private final ArrayList<InvertedIndex> levels;
+
+     /**
+      * Reads and creates an inversed lookup table of the contents of a file and
+      * outputs it to a json
+      *
+      * @param invertedIndex the thread safe invertedIndex
+      * @param workQueue     the work queue
+      */
+     public ReducingFileHandler(InvertedIndex invertedIndex, WorkQueue workQueue) {
+          this(invertedIndex, workQueue, SPLIT_SIZE);
+     }
+
+     /**
+      * Reads and creates an inversed lookup table of the contents of a file and
+      * outputs it to a json, splitting files bigger than a given size
+      *
+      * @param invertedIndex the thread safe invertedIndex
+      * @param workQueue     the work queue
+      * @param splitSize     the size of the ranges a big file is split into
+      */
+     public ReducingFileHandler(InvertedIndex invertedIndex, WorkQueue workQueue, long splitSize) {
+          super(invertedIndex, workQueue, splitSize);
+          this.invertedIndex = invertedIndex;
+          this.levels = new ArrayList<>();
+     }
+
+     /**
+      * Fills the inverted index with the contents of the file, adding what is left
+      * of the reduction to the shared index once every file is done, even if a
+      * file couldn't be read
+      *
+      * @param textPath - Path to the text file to be hashed
+      * @throws IOException the IO exception
+      */
+     @Override
+     public void fillInvertedIndex(Path textPath) throws IOException {
+          try {
+               super.fillInvertedIndex(textPath);
+          } finally {
+               InvertedIndex result = null;
+               synchronized (levels) {
+                    for (InvertedIndex partial : levels) {
+                         if (partial != null) {
+                              result = result == null ? partial : merge(result, partial);
+                         }
+                    }
+                    levels.clear();
+               }
+
+               if (result != null) {
+                    invertedIndex.addIndex(result);
+               }
+          }
+     }
+
+     /**
+      * Merges the local index with the partial result of the same size if there is
+      * one, and keeps going up the tree until there is no partner waiting
+      *
+      * @param local the local index of a file
+      */
+     @Override
+     protected void addLocal(InvertedIndex local) {
+          InvertedIndex current = local;
+          int level = 0;
+
+          while (true) {
+               InvertedIndex partner;
+
+               synchronized (levels) {
+                    if (level == levels.size()) {
+                         levels.add(null);
+                    }
+
+                    partner = levels.get(level);
+                    levels.set(level, partner == null ? current : null);
+               }
+
+               if (partner == null) {
+                    return;
+               }
+
+               current = merge(partner, current);
+               level++;
+          }
+     }
+
+     /**
+      * Merges two indexes that nothing else is using, adding the one with fewer
+      * documents to the other
+      *
+      * @param first  the first index
+      * @param second the second index
+      * @return the merged index
+      */
+     private static InvertedIndex merge(InvertedIndex first, InvertedIndex second) {
+          if (first.getDocumentCount() < second.getDocumentCount()) {
+               second.addIndex(first);
+               return second;
+          }
+          first.addIndex(second);
+          return first;
+     }
+}
@@ -0,0 +1,354 @@
+package edu.usfca.cs272.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
+
+/**
+ * A cache of the results of live searches, so a popular query is only
+ * searched once. Results are kept by the key of the query, which is already
+ * the same for every line with the same stems or the same parsed query, and a
+ * cache belongs to one query handler, so its search mode is always the same.
+ *
+ * <p>
+ * Results that were cut down to a limit can answer any search with a smaller
+ * limit. The cache holds at most a fixed number of results across every
+ * query, and drops the queries that were used least recently to make room.
+ * Whenever {@link InvertedIndex#getVersion()} changes, everything is dropped,
+ * and results that were worked out while the index changed are never kept.
+ *
+ * <p>
+ * Searches for the same query that miss at the same time are coalesced: the
+ * first one searches the index and the rest wait on its future and share its
+ * results, so a burst of a popular query only searches the index once.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class ResultCache {
+
+     /**
+      * the default number of results kept across every query
+      */
+     public static final int DEFAULT_CAPACITY = 100_000;
+
+     /**
+      * the index the results are from
+      */
+     private final InvertedIndex index;
+
+     /**
+      * the most results kept across every query
+      */
+     private final int capacity;
+
+     /**
+      * the results by query key, from least to most recently used
+      */
+     private final LinkedHashMap<String, Results> results;
+
+     /**
+      * the searches that are running by query key
+      */
+     private final HashMap<String, Search> searches;
+
+     /**
+      * the number of results kept across every query
+      */
+     private long size;
+
+     /**
+      * the version of the index the results are from
+      */
+     private long version;
+
+     /**
+      * the number of searches that were answered from the cache
+      */
+     private final LongAdder hits;
+
+     /**
+      * the number of searches that had to search the index
+      */
+     private final LongAdder misses;
+
+     /**
+      * the number of searches that waited on the same search running in another
+      * thread
+      */
+     private final LongAdder coalesced;
+
+     /**
+      * Creates a cache that keeps {@link #DEFAULT_CAPACITY} results
+      *
+      * @param index the index the results are from
+      */
+     public ResultCache(InvertedIndex index) {
+          this(index, DEFAULT_CAPACITY);
+     }
+
+     /**
+      * Creates a cache
+      *
+      * @param index    the index the results are from
+      * @param capacity the most results kept across every query
+      */
+     public ResultCache(InvertedIndex index, int capacity) {
+          this.index = index;
+          this.capacity = capacity;
+          this.results = new LinkedHashMap<>(16, 0.75f, true);
+          this.searches = new HashMap<>();
+          this.size = 0;
+          this.version = index.getVersion();
+          this.hits = new LongAdder();
+          this.misses = new LongAdder();
+          this.coalesced = new LongAdder();
+     }
+
+     /**
+      * Gets the results of a query from the cache, or searches for them and
+      * keeps them if they aren't there. If the same query is already being
+      * searched for with a limit that covers this one, waits for that search
+      * instead.
+      *
+      * @param key    the key of the query
+      * @param limit  the most results to return, or 0 for all of them
+      * @param search searches the index for the results with the limit
+      * @return the sorted results
+      * @throws RuntimeException whatever the search threw, as is, also in the
+      *                          searches that waited on it
+      */
+     public List<QueryEntry> get(String key, int limit, Supplier<List<QueryEntry>> search) {
+          long current = index.getVersion();
+          Search running;
+          Search started = null;
+
+          synchronized (this) {
+               if (current != version) {
+                    results.clear();
+                    size = 0;
+                    version = current;
+               }
+
+               Results cached = results.get(key);
+               if (cached != null && cached.covers(limit)) {
+                    hits.increment();
+                    return QueryHandlerInterface.limit(cached.entries, limit);
+               }
+
+               running = searches.get(key);
+               if (running == null || running.version != current || !running.covers(limit)) {
+                    running = null;
+                    started = new Search(limit, current);
+                    searches.put(key, started);
+               }
+          }
+
+          if (running != null) {
+               coalesced.increment();
+               return QueryHandlerInterface.limit(running.join().entries, limit);
+          }
+
+          misses.increment();
+          return search(key, started, search);
+     }
+
+     /**
+      * Searches for the results of a query, keeps them, and hands them to every
+      * search that is waiting for them
+      *
+      * @param key     the key of the query
+      * @param running the search that was started for the query
+      * @param search  searches the index for the results with the limit
+      * @return the sorted results
+      */
+     private List<QueryEntry> search(String key, Search running, Supplier<List<QueryEntry>> search) {
+          try {
+               Results found = new Results(Collections.unmodifiableList(search.get()), running.limit);
+               put(key, found, running.version);
+               running.future.complete(found);
+               return found.entries;
+          } catch (RuntimeException | Error e) {
+               running.future.completeExceptionally(e);
+               throw e;
+          } finally {
+               synchronized (this) {
+                    searches.remove(key, running);
+               }
+          }
+     }
+
+     /**
+      * Keeps the results of a query if the index hasn't changed since they were
+      * searched for, dropping the least recently used queries if there isn't
+      * room
+      *
+      * @param key      the key of the query
+      * @param entries  the results
+      * @param searched the version of the index that was searched
+      */
+     private synchronized void put(String key, Results entries, long searched) {
+          if (searched != version || entries.entries.size() > capacity) {
+               return;
+          }
+
+          Results old = results.put(key, entries);
+          if (old != null) {
+               size -= old.entries.size();
+          }
+          size += entries.entries.size();
+
+          Iterator<Entry<String, Results>> iterator = results.entrySet().iterator();
+          while (size > capacity) {
+               size -= iterator.next().getValue().entries.size();
+               iterator.remove();
+          }
+     }
+
+     /**
+      * Gets the number of searches that were answered from the cache
+      *
+      * @return the number of hits
+      */
+     public long getHits() {
+          return hits.sum();
+     }
+
+     /**
+      * Gets the number of searches that had to search the index
+      *
+      * @return the number of misses
+      */
+     public long getMisses() {
+          return misses.sum();
+     }
+
+     /**
+      * Gets the number of searches that waited on the same search running in
+      * another thread instead of searching the index
+      *
+      * @return the number of coalesced searches
+      */
+     public long getCoalesced() {
+          return coalesced.sum();
+     }
+
+     /**
+      * Gets the number of queries whose results are kept
+      *
+      * @return the number of queries
+      */
+     public synchronized int size() {
+          return results.size();
+     }
+
+     /**
+      * The results of a query and the limit they were cut down to
+      */
+     private static class Results {
+          /**
+           * the sorted results
+           */
+          private final List<QueryEntry> entries;
+
+          /**
+           * the limit the results were cut down to, or 0 if they weren't
+           */
+          private final int limit;
+
+          /**
+           * Creates the results of a query
+           *
+           * @param entries the sorted results
+           * @param limit   the limit the results were cut down to, or 0
+           */
+          private Results(List<QueryEntry> entries, int limit) {
+               this.entries = entries;
+               this.limit = limit;
+          }
+
+          /**
+           * Checks whether these results answer a search with a limit, which they
+           * do if they weren't cut down to a smaller limit
+           *
+           * @param wanted the limit of the search, or 0 for all of the results
+           * @return true if these results answer the search
+           */
+          private boolean covers(int wanted) {
+               return limit <= 0 || entries.size() < limit || (wanted > 0 && wanted <= limit);
+          }
+     }
+
+     /**
+      * A search that is running, which other searches for the same query can
+      * wait on
+      */
+     private static class Search {
+          /**
+           * the results once the search is done
+           */
+          private final CompletableFuture<Results> future;
+
+          /**
+           * the limit of the search, or 0 for all of the results
+           */
+          private final int limit;
+
+          /**
+           * the version of the index that is searched
+           */
+          private final long version;
+
+          /**
+           * Creates a running search
+           *
+           * @param limit   the limit of the search, or 0 for all of the results
+           * @param version the version of the index that is searched
+           */
+          private Search(int limit, long version) {
+               this.future = new CompletableFuture<>();
+               this.limit = limit;
+               this.version = version;
+          }
+
+          /**
+           * Checks whether the results of this search will answer a search with a
+           * limit
+           *
+           * @param wanted the limit of the search, or 0 for all of the results
+           * @return true if the results will answer the search
+           */
+          private boolean covers(int wanted) {
+               return limit <= 0 || (wanted > 0 && wanted <= limit);
+          }
+
+          /**
+           * Waits for the results, throwing whatever the search threw if it failed
+           *
+           * @return the results
+           */
+          private Results join() {
+               try {
+                    return future.join();
+               } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                         throw (RuntimeException) e.getCause();
+                    }
+                    if (e.getCause() instanceof Error) {
+                         throw (Error) e.getCause();
+                    }
+                    throw e;
+               }
+          }
+     }
+}
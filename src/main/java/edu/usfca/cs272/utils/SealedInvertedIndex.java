@@ -0,0 +1,656 @@
+package edu.usfca.cs272.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * A read-only inverted index with compressed postings, built from a finished
+ * index once nothing else will be added to it. Every field is final and never
+ * changes after construction, so any number of threads can search it without
+ * locking.
+ *
+ * <p>
+ * Documents are renumbered in sorted location order. The postings of every word
+ * are stored in one shared byte buffer as blocks of up to {@link #BLOCK_SIZE}
+ * documents:
+ *
+ * <pre>
+ * postings := documents:varint block*
+ * block    := lastDocument:varint maxScore:varint length:varint entry*
+ * entry    := documentGap:varint frequency:varint positionsLength:varint position*
+ * position := positionGap:varint
+ * </pre>
+ *
+ * Document ids and positions are delta encoded and every number is written as
+ * a variable-byte integer, seven bits per byte with the high bit marking that
+ * another byte follows. The block header lets a cursor skip a whole block
+ * without decoding it, and the positions length lets searches that only need
+ * frequencies skip over the positions. An index that only keeps frequencies
+ * writes no positions, so every positions length is zero.
+ *
+ * <p>
+ * The highest score each word gives any document is worked out while sealing
+ * and kept next to its offset, and the highest score in each block is kept in
+ * the block header, rounded up to a multiple of 1/{@link #SCORE_SCALE}. Searches
+ * for the best results use them to skip the documents and blocks that can't
+ * make the cut.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class SealedInvertedIndex extends InvertedIndex {
+
+     /**
+      * the maximum number of documents in a block
+      */
+     public static final int BLOCK_SIZE = 128;
+
+     /**
+      * the scale of the block scores, which are stored as whole numbers
+      */
+     public static final int SCORE_SCALE = 1 << 16;
+
+     /**
+      * the sorted words, numbered in order
+      */
+     private final TermDictionary words;
+
+     /**
+      * the offset of each word's postings in the postings buffer
+      */
+     private final int[] offsets;
+
+     /**
+      * the highest score of each word in any document
+      */
+     private final double[] maxScores;
+
+     /**
+      * the compressed postings of every word
+      */
+     private final ByteBuffer postings;
+
+     /**
+      * the sorted locations indexed by document id
+      */
+     private final String[] locations;
+
+     /**
+      * the word counts indexed by document id
+      */
+     private final int[] counts;
+
+     /**
+      * whether positions are kept or only frequencies
+      */
+     private final boolean positions;
+
+     /**
+      * the BM25 norms of the documents, which never change once sealed
+      */
+     private final Bm25 bm25;
+
+     /**
+      * the cache of what partial searches found for each prefix
+      */
+     private final PrefixCache prefixCache;
+
+     /**
+      * Seals an index, compressing all of its postings
+      *
+      * @param index the index to seal
+      */
+     public SealedInvertedIndex(InvertedIndex index) {
+          positions = index.hasPositions();
+          int documentCount = index.getDocumentCount();
+          locations = new String[documentCount];
+          counts = new int[documentCount];
+
+          for (int document = 0; document < documentCount; document++) {
+               locations[document] = index.getDocumentLocation(document);
+          }
+          Arrays.sort(locations);
+
+          int[] documentIds = new int[documentCount];
+          for (int document = 0; document < documentCount; document++) {
+               documentIds[document] = Arrays.binarySearch(locations, index.getDocumentLocation(document));
+               counts[documentIds[document]] = index.getDocumentWords(document);
+          }
+
+          // count with the same hook that is walked below, so the two always agree
+          int[] next = { 0 };
+          index.forEachWord("", (word, cursor) -> next[0]++);
+          offsets = new int[next[0]];
+          maxScores = new double[next[0]];
+
+          TermDictionary.Builder dictionary = new TermDictionary.Builder();
+          VarIntEncoder encoder = new VarIntEncoder();
+          next[0] = 0;
+
+          index.forEachWord("", (word, cursor) -> {
+               dictionary.add(word);
+               offsets[next[0]] = encoder.size();
+               maxScores[next[0]++] = encodePostings(cursor, documentIds, counts, positions, encoder);
+          });
+
+          words = dictionary.build();
+          postings = ByteBuffer.wrap(encoder.toArray()).asReadOnlyBuffer();
+          bm25 = new Bm25(this);
+          prefixCache = new PrefixCache();
+     }
+
+     /**
+      * Creates a sealed index from its already built parts
+      *
+      * @param words     the sorted words
+      * @param offsets   the offset of each word's postings
+      * @param maxScores the highest score of each word
+      * @param postings  the compressed postings
+      * @param locations the sorted locations
+      * @param counts    the word counts of each location
+      * @param positions whether positions are kept or only frequencies
+      */
+     private SealedInvertedIndex(TermDictionary words, int[] offsets, double[] maxScores, ByteBuffer postings,
+               String[] locations, int[] counts, boolean positions) {
+          this.positions = positions;
+          this.words = words;
+          this.offsets = offsets;
+          this.maxScores = maxScores;
+          this.postings = postings;
+          this.locations = locations;
+          this.counts = counts;
+          this.bm25 = new Bm25(this);
+          this.prefixCache = new PrefixCache();
+     }
+
+     /**
+      * Reads a sealed index from a binary index file
+      *
+      * @param path the path of the index file
+      * @return the sealed index
+      * @throws IOException if the file can't be read or isn't an index file
+      * @see IndexFile
+      */
+     public static SealedInvertedIndex readBinary(Path path) throws IOException {
+          return readBinary(path, false);
+     }
+
+     /**
+      * Maps a sealed index from a binary index file. The words and documents are
+      * read into memory, but the postings stay in the file and are only paged in
+      * by the operating system when a search reads them, so the postings can be
+      * much larger than the Java heap. The postings are one buffer with int
+      * offsets, so a file can hold at most 2 GB of them.
+      *
+      * @param path the path of the index file
+      * @return the sealed index
+      * @throws IOException if the file can't be read or isn't an index file
+      * @see IndexFile
+      */
+     public static SealedInvertedIndex mapBinary(Path path) throws IOException {
+          return readBinary(path, true);
+     }
+
+     /**
+      * Reads a sealed index from a binary index file
+      *
+      * @param path   the path of the index file
+      * @param mapped whether the postings should be mapped instead of read
+      * @return the sealed index
+      * @throws IOException if the file can't be read, isn't an index file or is
+      *                     damaged
+      */
+     private static SealedInvertedIndex readBinary(Path path, boolean mapped) throws IOException {
+          try (IndexFile file = IndexFile.open(path)) {
+               // a location is at least its length and count, and a word is also an offset and max score
+               String[] locations = new String[file.readCount(2 * Integer.BYTES)];
+               int[] counts = new int[locations.length];
+               for (int document = 0; document < locations.length; document++) {
+                    locations[document] = file.readString();
+                    counts[document] = file.readInt();
+                    if (counts[document] < 0) {
+                         throw new IOException(path + " has a negative word count");
+                    }
+                    if (document > 0 && locations[document].compareTo(locations[document - 1]) <= 0) {
+                         throw new IOException(path + " has locations out of order");
+                    }
+               }
+
+               TermDictionary.Builder words = new TermDictionary.Builder();
+               int[] offsets = new int[file.readCount(3 * Integer.BYTES + Double.BYTES)];
+               double[] maxScores = new double[offsets.length];
+               for (int word = 0; word < offsets.length; word++) {
+                    try {
+                         words.add(file.readString());
+                    } catch (IllegalArgumentException e) {
+                         throw new IOException(path + " has words out of order", e);
+                    }
+                    offsets[word] = file.readInt();
+                    maxScores[word] = file.readDouble();
+               }
+
+               int length = file.readInt();
+               for (int word = 0; word < offsets.length; word++) {
+                    if (offsets[word] < (word > 0 ? offsets[word - 1] : 0) || offsets[word] >= length) {
+                         throw new IOException(path + " has postings outside of the postings bytes");
+                    }
+               }
+
+               ByteBuffer postings = mapped ? file.mapBytes(length) : file.readBytes(length).asReadOnlyBuffer();
+               boolean positions = (file.getFlags() & IndexFile.FREQUENCIES_ONLY) == 0;
+               return new SealedInvertedIndex(words.build(), offsets, maxScores, postings, locations, counts, positions);
+          }
+     }
+
+     /**
+      * Writes the index to a binary index file
+      *
+      * @param path the path of the index file
+      * @throws IOException an IO exception
+      * @see IndexFile
+      */
+     @Override
+     public void writeBinary(Path path) throws IOException {
+          try (IndexFile file = IndexFile.create(path, positions ? 0 : IndexFile.FREQUENCIES_ONLY)) {
+               file.writeInt(locations.length);
+               for (int document = 0; document < locations.length; document++) {
+                    file.writeString(locations[document]);
+                    file.writeInt(counts[document]);
+               }
+
+               file.writeInt(words.size());
+               int word = 0;
+               for (String text : words) {
+                    file.writeString(text);
+                    file.writeInt(offsets[word]);
+                    file.writeDouble(maxScores[word++]);
+               }
+
+               file.writeInt(postings.capacity());
+               file.writeBytes(postings);
+          }
+     }
+
+     /**
+      * Encodes the postings of a word with the renumbered document ids
+      *
+      * @param cursor      the cursor over the original postings
+      * @param documentIds the new document ids indexed by the original ids
+      * @param counts      the word counts indexed by the new ids
+      * @param keep        whether to write the positions or only frequencies
+      * @param encoder     the encoder to write into
+      * @return the highest score of the word in any document
+      */
+     private static double encodePostings(PostingsCursor cursor, int[] documentIds, int[] counts, boolean keep,
+               VarIntEncoder encoder) {
+          int size = cursor.size();
+          int[] documents = new int[size];
+          int[] frequencies = new int[size];
+          PositionList[] positions = new PositionList[size];
+
+          // the renumbering can change the order, so sort the ids along with their index
+          long[] order = new long[size];
+          for (int i = 0; cursor.next(); i++) {
+               documents[i] = documentIds[cursor.document()];
+               frequencies[i] = cursor.frequency();
+               positions[i] = keep ? cursor.positions() : null;
+               order[i] = ((long) documents[i] << 32) | i;
+          }
+          Arrays.sort(order);
+
+          encoder.write(size);
+
+          VarIntEncoder block = new VarIntEncoder();
+          VarIntEncoder gaps = new VarIntEncoder();
+          int previous = -1;
+          double maxScore = 0;
+
+          for (int start = 0; start < size; start += BLOCK_SIZE) {
+               int end = Math.min(size, start + BLOCK_SIZE);
+               double blockMax = 0;
+               block.clear();
+
+               for (int i = start; i < end; i++) {
+                    int index = (int) order[i];
+                    int document = documents[index];
+                    PositionList list = positions[index];
+
+                    gaps.clear();
+                    int last = 0;
+                    for (int j = 0; list != null && j < list.size(); j++) {
+                         gaps.write(list.get(j) - last);
+                         last = list.get(j);
+                    }
+
+                    block.write(document - previous);
+                    block.write(frequencies[index]);
+                    block.write(gaps.size());
+                    block.write(gaps);
+                    previous = document;
+                    blockMax = Math.max(blockMax, (double) frequencies[index] / counts[document]);
+               }
+
+               encoder.write(previous);
+               encoder.write((int) Math.ceil(blockMax * SCORE_SCALE));
+               encoder.write(block.size());
+               encoder.write(block);
+               maxScore = Math.max(maxScore, blockMax);
+          }
+
+          return maxScore;
+     }
+
+     /**
+      * Gets the size of the compressed postings
+      *
+      * @return the number of bytes used by the postings
+      */
+     public int getPostingsSize() {
+          return postings.capacity();
+     }
+
+     @Override
+     public void addIndex(String word, String location, int index) {
+          throw new UnsupportedOperationException("A sealed index can't be changed");
+     }
+
+     @Override
+     public void addIndex(String word, String location, Set<Integer> indices) {
+          throw new UnsupportedOperationException("A sealed index can't be changed");
+     }
+
+     @Override
+     public void addIndex(InvertedIndex otherIndex) {
+          throw new UnsupportedOperationException("A sealed index can't be changed");
+     }
+
+     @Override
+     public SealedInvertedIndex seal() {
+          return this;
+     }
+
+     @Override
+     public boolean hasPositions() {
+          return positions;
+     }
+
+     @Override
+     protected PostingsCursor getPostings(String word) {
+          int index = words.find(word);
+          return index >= 0 ? new Cursor(offsets[index]) : null;
+     }
+
+     @Override
+     protected double getMaxScore(String word) {
+          int index = words.find(word);
+          return index >= 0 ? maxScores[index] : 0;
+     }
+
+     @Override
+     protected Bm25 getBm25() {
+          return bm25;
+     }
+
+     @Override
+     protected PrefixCache getPrefixCache() {
+          return prefixCache;
+     }
+
+     @Override
+     protected UnaryOperator<String> walkWords() {
+          return words.walker();
+     }
+
+     @Override
+     protected void forEachWord(String prefix, BiConsumer<String, PostingsCursor> action) {
+          words.forEachPrefix(prefix, (word, index) -> action.accept(word, new Cursor(offsets[index])));
+     }
+
+     @Override
+     protected int getDocumentCount() {
+          return locations.length;
+     }
+
+     @Override
+     protected int getDocumentId(String location) {
+          int document = Arrays.binarySearch(locations, location);
+          return document >= 0 ? document : -1;
+     }
+
+     @Override
+     protected String getDocumentLocation(int document) {
+          return locations[document];
+     }
+
+     @Override
+     protected int getDocumentWords(int document) {
+          return counts[document];
+     }
+
+     @Override
+     public Set<String> getWords() {
+          return new AbstractSet<>() {
+               @Override
+               public Iterator<String> iterator() {
+                    return words.iterator();
+               }
+
+               @Override
+               public int size() {
+                    return words.size();
+               }
+
+               @Override
+               public boolean contains(Object o) {
+                    return o instanceof String && words.find((String) o) >= 0;
+               }
+          };
+     }
+
+     /**
+      * A cursor that decodes the compressed postings of a word as it goes
+      */
+     private class Cursor implements PostingsCursor {
+          /**
+           * the total number of documents
+           */
+          private final int size;
+
+          /**
+           * the number of documents that haven't been read yet
+           */
+          private int remaining;
+
+          /**
+           * the number of documents left in the current block
+           */
+          private int blockRemaining;
+
+          /**
+           * the last document id of the current block
+           */
+          private int blockLast;
+
+          /**
+           * the highest score in the current block
+           */
+          private double blockMax;
+
+          /**
+           * the offset where the current block ends
+           */
+          private int blockEnd;
+
+          /**
+           * the offset of the next byte to read
+           */
+          private int offset;
+
+          /**
+           * the current document id
+           */
+          private int document;
+
+          /**
+           * the current frequency
+           */
+          private int frequency;
+
+          /**
+           * the offset of the current document's positions
+           */
+          private int positionsOffset;
+
+          /**
+           * the number of bytes of the current document's positions
+           */
+          private int positionsLength;
+
+          /**
+           * Creates a cursor over the postings at an offset
+           *
+           * @param offset the offset of the postings
+           */
+          private Cursor(int offset) {
+               this.offset = offset;
+               this.size = readVarInt();
+               this.remaining = size;
+               this.blockRemaining = 0;
+               this.document = -1;
+          }
+
+          @Override
+          public boolean next() {
+               if (remaining == 0) {
+                    return false;
+               }
+
+               if (blockRemaining == 0) {
+                    readBlockHeader();
+               }
+
+               document += readVarInt();
+               frequency = readVarInt();
+               positionsLength = readVarInt();
+               positionsOffset = offset;
+               offset += positionsLength;
+
+               remaining--;
+               blockRemaining--;
+               return true;
+          }
+
+          @Override
+          public boolean advance(int target) {
+               if (blockRemaining > 0 && blockLast < target) {
+                    skipBlock();
+               }
+
+               while (blockRemaining == 0 && remaining > 0) {
+                    readBlockHeader();
+                    if (blockLast < target) {
+                         skipBlock();
+                    }
+               }
+
+               while (next()) {
+                    if (document >= target) {
+                         return true;
+                    }
+               }
+               return false;
+          }
+
+          /**
+           * Reads the header of the next block
+           */
+          private void readBlockHeader() {
+               blockLast = readVarInt();
+               blockMax = (double) readVarInt() / SCORE_SCALE;
+               int length = readVarInt();
+               blockEnd = offset + length;
+               blockRemaining = Math.min(BLOCK_SIZE, remaining);
+          }
+
+          /**
+           * Skips the rest of the current block without decoding it
+           */
+          private void skipBlock() {
+               offset = blockEnd;
+               remaining -= blockRemaining;
+               blockRemaining = 0;
+               document = blockLast;
+          }
+
+          @Override
+          public int document() {
+               return document;
+          }
+
+          @Override
+          public int frequency() {
+               return frequency;
+          }
+
+          @Override
+          public int blockLast() {
+               return blockLast;
+          }
+
+          @Override
+          public double blockMaxScore() {
+               return blockMax;
+          }
+
+          @Override
+          public PositionList positions() {
+               if (!positions) {
+                    throw new UnsupportedOperationException("Only frequencies are kept for this index");
+               }
+
+               PositionList list = new PositionList();
+               int end = positionsOffset + positionsLength;
+               int saved = offset;
+               offset = positionsOffset;
+
+               int position = 0;
+               while (offset < end) {
+                    position += readVarInt();
+                    list.add(position);
+               }
+
+               offset = saved;
+               return list;
+          }
+
+          @Override
+          public int size() {
+               return size;
+          }
+
+          /**
+           * Reads a variable-byte integer at the offset and moves past it
+           *
+           * @return the integer
+           */
+          private int readVarInt() {
+               int value = 0;
+               int shift = 0;
+               byte b;
+               do {
+                    b = postings.get(offset++);
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+               } while (b < 0);
+               return value;
+          }
+     }
+}
@@ -0,0 +1,761 @@
+package edu.usfca.cs272.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * A thread safe inverted index made of immutable segments. Every call to
+ * {@link #addIndex(InvertedIndex)} seals the added index into a new segment in
+ * the calling thread, so the workers don't wait on each other while building,
+ * and then only takes a short lock to add the segment to the list.
+ *
+ * <p>
+ * The list of segments is itself an immutable snapshot that is swapped out on
+ * every change. Searches read the current snapshot once and fan out over its
+ * segments without any locking. Whenever there are {@link #MERGE_FACTOR}
+ * segments of about the same size, they are merged into one bigger segment by
+ * a task on the work queue, so the number of segments a search has to visit
+ * grows with the log of the number of documents.
+ *
+ * <p>
+ * Words can only be added as whole indexes. A location that is added again is
+ * merged right away with the segments it is already in, so every location is
+ * in exactly one segment. That merge is done before taking the lock, and is
+ * tried again if the segments it merged changed in the meantime.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class SegmentedInvertedIndex extends InvertedIndex {
+
+     /**
+      * the number of similar sized segments that get merged together
+      */
+     public static final int MERGE_FACTOR = 8;
+
+     /**
+      * the work queue for the background merges
+      */
+     private final WorkQueue workQueue;
+
+     /**
+      * the lock for changing the segments
+      */
+     private final Object segmentsKey;
+
+     /**
+      * the current segments, which are never changed once they are published
+      */
+     private volatile Segments segments;
+
+     /**
+      * whether a background merge is running
+      */
+     private boolean merging;
+
+     /**
+      * Creates an empty segmented index
+      *
+      * @param workQueue the work queue for the background merges
+      */
+     public SegmentedInvertedIndex(WorkQueue workQueue) {
+          this(workQueue, true);
+     }
+
+     /**
+      * Creates an empty segmented index that may only keep frequencies
+      *
+      * @param workQueue the work queue for the background merges
+      * @param positions whether to keep positions or only frequencies
+      * @see InvertedIndex#InvertedIndex(boolean)
+      */
+     public SegmentedInvertedIndex(WorkQueue workQueue, boolean positions) {
+          super(positions, false);
+          this.workQueue = workQueue;
+          this.segmentsKey = new Object();
+          this.segments = new Segments(new SealedInvertedIndex[0]);
+          this.merging = false;
+     }
+
+     /**
+      * Adds an index as a new segment. The index is sealed, and merged with the
+      * segments that already have any of its locations, before any lock is
+      * taken, so several threads can add indexes at the same time. The lock is
+      * only held to check that no segment added in the meantime has any of those
+      * locations and that the merged segments are still there, and the add is
+      * tried again otherwise.
+      *
+      * @param otherIndex the other inverted index
+      */
+     @Override
+     public void addIndex(InvertedIndex otherIndex) {
+          SealedInvertedIndex segment = otherIndex.seal();
+          if (segment.getDocumentCount() == 0) {
+               return;
+          }
+
+          while (true) {
+               Segments seen = segments;
+               List<SealedInvertedIndex> overlapping = getOverlapping(Arrays.asList(seen.segments), segment);
+               SealedInvertedIndex added = segment;
+
+               if (!overlapping.isEmpty()) {
+                    List<SealedInvertedIndex> merging = new ArrayList<>(overlapping);
+                    merging.add(segment);
+                    added = merge(merging);
+               }
+
+               synchronized (segmentsKey) {
+                    List<SealedInvertedIndex> list = new ArrayList<>(Arrays.asList(segments.segments));
+
+                    if (segments == seen || (list.containsAll(overlapping)
+                              && getOverlapping(getAddedSince(seen, list), segment).isEmpty())) {
+                         list.removeAll(overlapping);
+                         list.add(added);
+                         publish(list);
+                         return;
+                    }
+               }
+          }
+     }
+
+     @Override
+     public void addIndex(String word, String location, int index) {
+          throw new UnsupportedOperationException("Only whole indexes can be added to a segmented index");
+     }
+
+     @Override
+     public void addIndex(String word, String location, Set<Integer> indices) {
+          throw new UnsupportedOperationException("Only whole indexes can be added to a segmented index");
+     }
+
+     /**
+      * Gets the segments that were published after an older snapshot of them
+      *
+      * @param seen the older snapshot
+      * @param list the current segments
+      * @return the segments that aren't in the older snapshot
+      */
+     private static List<SealedInvertedIndex> getAddedSince(Segments seen, List<SealedInvertedIndex> list) {
+          Set<SealedInvertedIndex> old = Collections.newSetFromMap(new IdentityHashMap<>());
+          old.addAll(Arrays.asList(seen.segments));
+
+          List<SealedInvertedIndex> added = new ArrayList<>();
+          for (SealedInvertedIndex segment : list) {
+               if (!old.contains(segment)) {
+                    added.add(segment);
+               }
+          }
+          return added;
+     }
+
+     /**
+      * Gets the segments that have any of the locations of a new segment, looking
+      * up the locations of whichever of the two has fewer documents in the other
+      *
+      * @param list    the current segments
+      * @param segment the new segment
+      * @return the overlapping segments
+      */
+     private static List<SealedInvertedIndex> getOverlapping(List<SealedInvertedIndex> list,
+               SealedInvertedIndex segment) {
+          List<SealedInvertedIndex> overlapping = new ArrayList<>();
+
+          for (SealedInvertedIndex other : list) {
+               if (overlaps(segment, other)) {
+                    overlapping.add(other);
+               }
+          }
+
+          return overlapping;
+     }
+
+     /**
+      * Checks whether two segments have any location in common
+      *
+      * @param first  the first segment
+      * @param second the second segment
+      * @return true if a location is in both segments
+      */
+     private static boolean overlaps(SealedInvertedIndex first, SealedInvertedIndex second) {
+          if (first.getDocumentCount() > second.getDocumentCount()) {
+               return overlaps(second, first);
+          }
+
+          for (int document = 0; document < first.getDocumentCount(); document++) {
+               if (second.getDocumentId(first.getDocumentLocation(document)) >= 0) {
+                    return true;
+               }
+          }
+          return false;
+     }
+
+     /**
+      * Merges segments into one segment
+      *
+      * @param list the segments
+      * @return the merged segment
+      */
+     private static SealedInvertedIndex merge(List<SealedInvertedIndex> list) {
+          InvertedIndex merged = new InvertedIndex(list.stream().allMatch(SealedInvertedIndex::hasPositions));
+          for (SealedInvertedIndex segment : list) {
+               merged.addIndex(segment);
+          }
+          return merged.seal();
+     }
+
+     /**
+      * Publishes a new list of segments and starts a background merge if one is
+      * needed. Has to be called while holding the segments key.
+      *
+      * @param list the segments
+      */
+     private void publish(List<SealedInvertedIndex> list) {
+          segments = new Segments(list.toArray(new SealedInvertedIndex[0]));
+          version++;
+
+          if (!merging) {
+               List<SealedInvertedIndex> candidates = getMergeCandidates(list);
+               if (candidates != null) {
+                    merging = true;
+                    workQueue.execute(new MergeTask(candidates));
+               }
+          }
+     }
+
+     /**
+      * Finds {@link #MERGE_FACTOR} segments in the same size tier, starting with
+      * the smallest tier. A segment with n documents is in tier
+      * log<sub>MERGE_FACTOR</sub>(n).
+      *
+      * @param list the segments
+      * @return the segments to merge or null if no merge is needed
+      */
+     private static List<SealedInvertedIndex> getMergeCandidates(List<SealedInvertedIndex> list) {
+          TreeMap<Integer, List<SealedInvertedIndex>> tiers = new TreeMap<>();
+
+          for (SealedInvertedIndex segment : list) {
+               int tier = 0;
+               for (int documents = segment.getDocumentCount(); documents >= MERGE_FACTOR; documents /= MERGE_FACTOR) {
+                    tier++;
+               }
+               tiers.computeIfAbsent(tier, k -> new ArrayList<>()).add(segment);
+          }
+
+          for (List<SealedInvertedIndex> tier : tiers.values()) {
+               if (tier.size() >= MERGE_FACTOR) {
+                    return tier.subList(0, MERGE_FACTOR);
+               }
+          }
+
+          return null;
+     }
+
+     /**
+      * The task for merging segments in the background
+      */
+     private class MergeTask implements Runnable {
+          /**
+           * the segments to merge
+           */
+          private final List<SealedInvertedIndex> candidates;
+
+          /**
+           * Creates the merge task
+           *
+           * @param candidates the segments to merge
+           */
+          private MergeTask(List<SealedInvertedIndex> candidates) {
+               this.candidates = candidates;
+          }
+
+          @Override
+          public void run() {
+               SealedInvertedIndex merged = null;
+               try {
+                    merged = merge(candidates);
+               } finally {
+                    synchronized (segmentsKey) {
+                         merging = false;
+                         List<SealedInvertedIndex> list = new ArrayList<>(Arrays.asList(segments.segments));
+
+                         // a segment may have been merged away by an overlapping add in the meantime
+                         if (merged != null && list.containsAll(candidates)) {
+                              list.removeAll(candidates);
+                              list.add(merged);
+                         }
+
+                         publish(list);
+                    }
+               }
+          }
+     }
+
+     /**
+      * Gets the number of segments
+      *
+      * @return the number of segments
+      */
+     public int getSegmentCount() {
+          return segments.segments.length;
+     }
+
+     /**
+      * Counts the times the segments have been published, which only changes
+      * while holding the segments key
+      */
+     @Override
+     public long getVersion() {
+          synchronized (segmentsKey) {
+               return version;
+          }
+     }
+
+     @Override
+     public List<QueryEntry> exactSearch(Set<String> queries, int limit, boolean bm25) {
+          return segments.exactSearch(queries, limit, bm25);
+     }
+
+     @Override
+     public List<QueryEntry> partialSearch(Set<String> queries, int limit, boolean bm25) {
+          return segments.partialSearch(queries, limit, bm25);
+     }
+
+     @Override
+     public List<QueryEntry> fuzzySearch(Set<String> queries, int distance, int limit, boolean bm25) {
+          return segments.fuzzySearch(queries, distance, limit, bm25);
+     }
+
+     @Override
+     public List<QueryEntry> phraseSearch(PhraseQuery phrase, int limit) {
+          return segments.phraseSearch(phrase, limit);
+     }
+
+     @Override
+     public List<QueryEntry> booleanSearch(BooleanQuery query, boolean partial, int limit) {
+          return segments.booleanSearch(query, partial, limit);
+     }
+
+     /**
+      * Merges every segment into one sealed index
+      *
+      * @return the sealed index
+      */
+     @Override
+     public SealedInvertedIndex seal() {
+          return segments.seal();
+     }
+
+     /**
+      * Only keeps positions if this index wasn't made to keep only frequencies and
+      * none of the indexes added to it were
+      */
+     @Override
+     public boolean hasPositions() {
+          return super.hasPositions() && segments.hasPositions();
+     }
+
+     @Override
+     protected PostingsCursor getPostings(String word) {
+          return segments.getPostings(word);
+     }
+
+     @Override
+     protected UnaryOperator<String> walkWords() {
+          return segments.walkWords();
+     }
+
+     @Override
+     protected void forEachWord(String prefix, BiConsumer<String, PostingsCursor> action) {
+          segments.forEachWord(prefix, action);
+     }
+
+     @Override
+     protected int getDocumentCount() {
+          return segments.getDocumentCount();
+     }
+
+     @Override
+     protected int getDocumentId(String location) {
+          return segments.getDocumentId(location);
+     }
+
+     @Override
+     protected String getDocumentLocation(int document) {
+          return segments.getDocumentLocation(document);
+     }
+
+     @Override
+     protected int getDocumentWords(int document) {
+          return segments.getDocumentWords(document);
+     }
+
+     @Override
+     public Set<String> getWords() {
+          return segments.getWords();
+     }
+
+     @Override
+     public Set<String> getLocationsOfWord(String word) {
+          return segments.getLocationsOfWord(word);
+     }
+
+     @Override
+     public Set<Integer> getInstancesOfWordInLocation(String word, String location) {
+          return segments.getInstancesOfWordInLocation(word, location);
+     }
+
+     @Override
+     public boolean hasWord(String word) {
+          return segments.hasWord(word);
+     }
+
+     @Override
+     public boolean hasLocation(String word, String location) {
+          return segments.hasLocation(word, location);
+     }
+
+     @Override
+     public boolean hasPosition(String word, String location, int position) {
+          return segments.hasPosition(word, location, position);
+     }
+
+     @Override
+     public void writeIndex(Path path) throws IOException {
+          segments.writeIndex(path);
+     }
+
+     @Override
+     public String writeIndex() {
+          return segments.writeIndex();
+     }
+
+     @Override
+     public Map<String, Integer> getCounts() {
+          return segments.getCounts();
+     }
+
+     @Override
+     public int getCountsInLocation(String location) {
+          return segments.getCountsInLocation(location);
+     }
+
+     @Override
+     public boolean containsFile(String file) {
+          return segments.containsFile(file);
+     }
+
+     @Override
+     public Set<String> getLocations() {
+          return segments.getLocations();
+     }
+
+     @Override
+     public void writeCounts(Path path) throws IOException {
+          segments.writeCounts(path);
+     }
+
+     @Override
+     public String writeCounts() {
+          return segments.writeCounts();
+     }
+
+     @Override
+     public String toString() {
+          return segments.toString();
+     }
+
+     /**
+      * A read-only view over a fixed list of segments. The documents of each
+      * segment are numbered after the documents of the segments before it, so
+      * the postings of a word are just the postings of each segment one after
+      * another.
+      */
+     private static class Segments extends InvertedIndex {
+          /**
+           * the segments
+           */
+          private final SealedInvertedIndex[] segments;
+
+          /**
+           * the first document id of each segment, followed by the total number of
+           * documents
+           */
+          private final int[] bases;
+
+          /**
+           * the BM25 norms of the documents across every segment, worked out by the
+           * first search that scores with BM25
+           */
+          private volatile Bm25 bm25;
+
+          /**
+           * the cache of what partial searches found for each prefix across every
+           * segment, which is replaced along with the segments
+           */
+          private final PrefixCache prefixCache;
+
+          /**
+           * Creates a view over segments
+           *
+           * @param segments the segments, none of which are empty
+           */
+          private Segments(SealedInvertedIndex[] segments) {
+               super(true, false);
+               this.segments = segments;
+               this.bases = new int[segments.length + 1];
+
+               for (int i = 0; i < segments.length; i++) {
+                    bases[i + 1] = bases[i] + segments[i].getDocumentCount();
+               }
+
+               this.bm25 = null;
+               this.prefixCache = new PrefixCache();
+          }
+
+          /**
+           * Finds the segment of a document
+           *
+           * @param document the document id
+           * @return the index of the segment
+           */
+          private int getSegment(int document) {
+               int segment = Arrays.binarySearch(bases, document);
+               return segment >= 0 ? segment : -(segment + 1) - 1;
+          }
+
+          @Override
+          protected PostingsCursor getPostings(String word) {
+               PostingsCursor[] cursors = new PostingsCursor[segments.length];
+               boolean found = false;
+
+               for (int i = 0; i < segments.length; i++) {
+                    cursors[i] = segments[i].getPostings(word);
+                    found |= cursors[i] != null;
+               }
+
+               return found ? new Cursor(cursors) : null;
+          }
+
+          /**
+           * Every document is in exactly one segment, so the highest score of a
+           * word is the highest of its segments
+           */
+          @Override
+          protected double getMaxScore(String word) {
+               double maxScore = 0;
+               for (SealedInvertedIndex segment : segments) {
+                    maxScore = Math.max(maxScore, segment.getMaxScore(word));
+               }
+               return maxScore;
+          }
+
+          @Override
+          protected Bm25 getBm25() {
+               Bm25 norms = bm25;
+               if (norms == null) {
+                    synchronized (this) {
+                         norms = bm25;
+                         if (norms == null) {
+                              norms = new Bm25(this);
+                              bm25 = norms;
+                         }
+                    }
+               }
+               return norms;
+          }
+
+          @Override
+          protected PrefixCache getPrefixCache() {
+               return prefixCache;
+          }
+
+          @Override
+          protected UnaryOperator<String> walkWords() {
+               List<UnaryOperator<String>> walkers = new ArrayList<>();
+               for (SealedInvertedIndex segment : segments) {
+                    walkers.add(segment.walkWords());
+               }
+
+               return target -> {
+                    String ceiling = null;
+                    for (UnaryOperator<String> walker : walkers) {
+                         String word = walker.apply(target);
+                         if (word != null && (ceiling == null || word.compareTo(ceiling) < 0)) {
+                              ceiling = word;
+                         }
+                    }
+                    return ceiling;
+               };
+          }
+
+          @Override
+          protected void forEachWord(String prefix, BiConsumer<String, PostingsCursor> action) {
+               TreeMap<String, PostingsCursor[]> words = new TreeMap<>();
+
+               for (int i = 0; i < segments.length; i++) {
+                    int segment = i;
+                    segments[i].forEachWord(prefix, (word, cursor) -> {
+                         words.computeIfAbsent(word, k -> new PostingsCursor[segments.length])[segment] = cursor;
+                    });
+               }
+
+               words.forEach((word, cursors) -> action.accept(word, new Cursor(cursors)));
+          }
+
+          @Override
+          protected int getDocumentCount() {
+               return bases[segments.length];
+          }
+
+          @Override
+          protected int getDocumentId(String location) {
+               for (int i = 0; i < segments.length; i++) {
+                    int document = segments[i].getDocumentId(location);
+                    if (document >= 0) {
+                         return bases[i] + document;
+                    }
+               }
+               return -1;
+          }
+
+          @Override
+          protected String getDocumentLocation(int document) {
+               int segment = getSegment(document);
+               return segments[segment].getDocumentLocation(document - bases[segment]);
+          }
+
+          @Override
+          protected int getDocumentWords(int document) {
+               int segment = getSegment(document);
+               return segments[segment].getDocumentWords(document - bases[segment]);
+          }
+
+          @Override
+          public Set<String> getWords() {
+               TreeSet<String> words = new TreeSet<>();
+               for (SealedInvertedIndex segment : segments) {
+                    words.addAll(segment.getWords());
+               }
+               return Collections.unmodifiableSet(words);
+          }
+
+          @Override
+          public SealedInvertedIndex seal() {
+               return segments.length == 1 ? segments[0] : super.seal();
+          }
+
+          @Override
+          public boolean hasPositions() {
+               for (SealedInvertedIndex segment : segments) {
+                    if (!segment.hasPositions()) {
+                         return false;
+                    }
+               }
+               return true;
+          }
+
+          /**
+           * A cursor over the postings of a word in every segment
+           */
+          private class Cursor implements PostingsCursor {
+               /**
+                * the cursor of each segment, null if the word isn't in the segment
+                */
+               private final PostingsCursor[] cursors;
+
+               /**
+                * the total number of documents
+                */
+               private final int size;
+
+               /**
+                * the segment of the current document
+                */
+               private int segment;
+
+               /**
+                * Creates a cursor over the cursors of each segment
+                *
+                * @param cursors the cursors
+                */
+               private Cursor(PostingsCursor[] cursors) {
+                    this.cursors = cursors;
+                    this.segment = 0;
+
+                    int total = 0;
+                    for (PostingsCursor cursor : cursors) {
+                         if (cursor != null) {
+                              total += cursor.size();
+                         }
+                    }
+                    this.size = total;
+               }
+
+               @Override
+               public boolean next() {
+                    while (segment < cursors.length) {
+                         if (cursors[segment] != null && cursors[segment].next()) {
+                              return true;
+                         }
+                         segment++;
+                    }
+                    return false;
+               }
+
+               @Override
+               public boolean advance(int target) {
+                    while (segment < cursors.length) {
+                         if (cursors[segment] != null && target < bases[segment + 1]
+                                   && cursors[segment].advance(Math.max(target - bases[segment], 0))) {
+                              return true;
+                         }
+                         segment++;
+                    }
+                    return false;
+               }
+
+               @Override
+               public int document() {
+                    return bases[segment] + cursors[segment].document();
+               }
+
+               @Override
+               public int frequency() {
+                    return cursors[segment].frequency();
+               }
+
+               @Override
+               public int blockLast() {
+                    return bases[segment] + cursors[segment].blockLast();
+               }
+
+               @Override
+               public double blockMaxScore() {
+                    return cursors[segment].blockMaxScore();
+               }
+
+               @Override
+               public PositionList positions() {
+                    return cursors[segment].positions();
+               }
+
+               @Override
+               public int size() {
+                    return size;
+               }
+          }
+     }
+}
@@ -0,0 +1,646 @@
+package edu.usfca.cs272.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * A thread safe inverted index split into shards by the hash of each word. Each
+ * shard has its own lock, and the documents and their counts have another, so
+ * workers adding indexes at the same time only wait on each other when they
+ * need the same shard. Each add starts at a different shard to keep the
+ * workers apart.
+ *
+ * <p>
+ * Searches take every read lock, so they see a consistent index, but an add is
+ * done one shard at a time and a search that runs in the middle of one can see
+ * part of it. The words an add puts in a shard are counted before that shard
+ * is unlocked, so a search never sees a posting of a document whose words
+ * aren't counted yet.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class ShardedInvertedIndex extends InvertedIndex {
+
+     /**
+      * the default number of shards
+      */
+     public static final int DEFAULT_SHARDS = 16;
+
+     /**
+      * the postings of the words in each shard
+      */
+     private final TreeMap<String, PostingList>[] shards;
+
+     /**
+      * the lock for each shard
+      */
+     private final MultiReaderLock[] shardLocks;
+
+     /**
+      * the documents, which also keeps the counts
+      */
+     private final DocumentTable documents;
+
+     /**
+      * the lock for the documents
+      */
+     private final MultiReaderLock documentsLock;
+
+     /**
+      * the shard the next add starts at
+      */
+     private int nextShard;
+
+     /**
+      * Creates an index with the default number of shards
+      */
+     public ShardedInvertedIndex() {
+          this(DEFAULT_SHARDS);
+     }
+
+     /**
+      * Creates an index with a number of shards, rounded up to a power of two
+      *
+      * @param shards the number of shards
+      */
+     public ShardedInvertedIndex(int shards) {
+          this(shards, MultiReaderLock::new, true);
+     }
+
+     /**
+      * Creates an index with a number of shards, rounded up to a power of two,
+      * and a choice of locks that may only keep frequencies
+      *
+      * @param shards    the number of shards
+      * @param locks     creates each of the locks, such as
+      *                  {@link ReaderBiasedLock} for an index that is mostly
+      *                  searched
+      * @param positions whether to keep positions or only frequencies
+      * @see InvertedIndex#InvertedIndex(boolean)
+      */
+     @SuppressWarnings({ "unchecked", "rawtypes" })
+     public ShardedInvertedIndex(int shards, Supplier<MultiReaderLock> locks, boolean positions) {
+          super(positions, false);
+          int count = 1;
+          while (count < shards) {
+               count <<= 1;
+          }
+
+          this.shards = new TreeMap[count];
+          this.shardLocks = new MultiReaderLock[count];
+          for (int i = 0; i < count; i++) {
+               this.shards[i] = new TreeMap<>();
+               this.shardLocks[i] = locks.get();
+          }
+
+          this.documents = new DocumentTable();
+          this.documentsLock = locks.get();
+          this.nextShard = 0;
+     }
+
+     /**
+      * Gets the shard of a word
+      *
+      * @param word the word
+      * @return the index of the shard
+      */
+     private int getShard(String word) {
+          int hash = word.hashCode();
+          return (hash ^ (hash >>> 16)) & (shards.length - 1);
+     }
+
+     /**
+      * Gets the number of shards
+      *
+      * @return the number of shards
+      */
+     public int getShardCount() {
+          return shards.length;
+     }
+
+     /**
+      * Takes the read lock of every shard and the documents, always in the same
+      * order
+      */
+     private void lockAll() {
+          for (MultiReaderLock lock : shardLocks) {
+               lock.readLock().lock();
+          }
+          documentsLock.readLock().lock();
+     }
+
+     /**
+      * Releases the locks taken by {@link #lockAll()}
+      */
+     private void unlockAll() {
+          documentsLock.readLock().unlock();
+          for (MultiReaderLock lock : shardLocks) {
+               lock.readLock().unlock();
+          }
+     }
+
+     /**
+      * Gets the id of a location, adding it if needed
+      *
+      * @param location the location
+      * @return the document id
+      */
+     private int addDocument(String location) {
+          documentsLock.writeLock().lock();
+          try {
+               return documents.add(location);
+          } finally {
+               documentsLock.writeLock().unlock();
+          }
+     }
+
+     /**
+      * Adds to the word count of a document. This is called while holding the
+      * write lock of the shard the words were added to, so the count is there
+      * before any search can see the words.
+      *
+      * @param document the document id
+      * @param words    the amount of words to add
+      */
+     private void addCount(int document, int words) {
+          if (words > 0) {
+               documentsLock.writeLock().lock();
+               try {
+                    documents.addCount(document, words);
+                    version++;
+               } finally {
+                    documentsLock.writeLock().unlock();
+               }
+          }
+     }
+
+     /**
+      * Adds to the word counts of several documents and clears the amounts,
+      * while holding the write lock of the shard the words were added to
+      *
+      * @param documentIds the document ids
+      * @param added       the amount of words to add to each document, which are
+      *                    set back to 0
+      */
+     private void addCounts(int[] documentIds, int[] added) {
+          documentsLock.writeLock().lock();
+          try {
+               for (int document = 0; document < added.length; document++) {
+                    if (added[document] > 0) {
+                         documents.addCount(documentIds[document], added[document]);
+                         added[document] = 0;
+                    }
+               }
+               version++;
+          } finally {
+               documentsLock.writeLock().unlock();
+          }
+     }
+
+     @Override
+     public void addIndex(String word, String location, int index) {
+          int document = addDocument(location);
+          int shard = getShard(word);
+
+          shardLocks[shard].writeLock().lock();
+          try {
+               boolean result = shards[shard].computeIfAbsent(word, k -> new PostingList(hasPositions())).add(document,
+                         index);
+               addCount(document, result ? 1 : 0);
+          } finally {
+               shardLocks[shard].writeLock().unlock();
+          }
+     }
+
+     @Override
+     public void addIndex(String word, String location, Set<Integer> indices) {
+          int document = addDocument(location);
+          int shard = getShard(word);
+
+          shardLocks[shard].writeLock().lock();
+          try {
+               PostingList postings = shards[shard].computeIfAbsent(word, k -> new PostingList(hasPositions()));
+               int added = 0;
+               for (int index : indices) {
+                    if (postings.add(document, index)) {
+                         added++;
+                    }
+               }
+               addCount(document, added);
+          } finally {
+               shardLocks[shard].writeLock().unlock();
+          }
+     }
+
+     /**
+      * Adds another index one shard at a time, so adds from other threads can work
+      * on the other shards at the same time. The words added to each shard are
+      * counted before it is unlocked.
+      *
+      * @param otherIndex the other inverted index
+      */
+     @Override
+     public void addIndex(InvertedIndex otherIndex) {
+          int[] documentIds = new int[otherIndex.getDocumentCount()];
+          int start;
+
+          documentsLock.writeLock().lock();
+          try {
+               for (int document = 0; document < documentIds.length; document++) {
+                    documentIds[document] = documents.add(otherIndex.getDocumentLocation(document));
+               }
+               start = nextShard++ & (shards.length - 1);
+          } finally {
+               documentsLock.writeLock().unlock();
+          }
+
+          List<List<Entry<String, PostingsCursor>>> split = new ArrayList<>();
+          for (int i = 0; i < shards.length; i++) {
+               split.add(new ArrayList<>());
+          }
+          otherIndex.forEachWord("", (word, cursor) -> split.get(getShard(word)).add(Map.entry(word, cursor)));
+
+          int[] added = new int[documentIds.length];
+
+          for (int i = 0; i < shards.length; i++) {
+               int shard = (start + i) & (shards.length - 1);
+               if (split.get(shard).isEmpty()) {
+                    continue;
+               }
+
+               shardLocks[shard].writeLock().lock();
+               try {
+                    for (Entry<String, PostingsCursor> entry : split.get(shard)) {
+                         PostingList postings = shards[shard].computeIfAbsent(entry.getKey(),
+                                   k -> new PostingList(hasPositions()));
+                         PostingsCursor cursor = entry.getValue();
+
+                         while (cursor.next()) {
+                              added[cursor.document()] += postings.add(documentIds[cursor.document()], cursor);
+                         }
+                    }
+                    addCounts(documentIds, added);
+               } finally {
+                    shardLocks[shard].writeLock().unlock();
+               }
+          }
+     }
+
+     @Override
+     protected PostingsCursor getPostings(String word) {
+          PostingList postings = shards[getShard(word)].get(word);
+          return postings != null ? postings.cursor() : null;
+     }
+
+     /**
+      * Gets a function that finds the first word of any shard that isn't before a
+      * target
+      *
+      * @return the function, which returns null if every word is before the
+      *         target
+      */
+     @Override
+     protected UnaryOperator<String> walkWords() {
+          return target -> {
+               String ceiling = null;
+               for (TreeMap<String, PostingList> shard : shards) {
+                    String word = shard.ceilingKey(target);
+                    if (word != null && (ceiling == null || word.compareTo(ceiling) < 0)) {
+                         ceiling = word;
+                    }
+               }
+               return ceiling;
+          };
+     }
+
+     /**
+      * Goes through every word that starts with the prefix, in sorted order across
+      * all of the shards, along with a cursor over its postings
+      *
+      * @param prefix the prefix
+      * @param action the action for each word and its postings
+      */
+     @Override
+     protected void forEachWord(String prefix, BiConsumer<String, PostingsCursor> action) {
+          PriorityQueue<ShardIterator> queue = new PriorityQueue<>();
+
+          for (TreeMap<String, PostingList> shard : shards) {
+               ShardIterator iterator = new ShardIterator(shard.tailMap(prefix).entrySet().iterator(), prefix);
+               if (iterator.current != null) {
+                    queue.add(iterator);
+               }
+          }
+
+          while (!queue.isEmpty()) {
+               ShardIterator iterator = queue.poll();
+               action.accept(iterator.current.getKey(), iterator.current.getValue().cursor());
+               if (iterator.advance()) {
+                    queue.add(iterator);
+               }
+          }
+     }
+
+     /**
+      * Walks the words of one shard that start with a prefix, ordered by the word
+      * it is on so the shards can be merged
+      */
+     private static class ShardIterator implements Comparable<ShardIterator> {
+          /**
+           * the entries of the shard
+           */
+          private final Iterator<Entry<String, PostingList>> entries;
+
+          /**
+           * the prefix
+           */
+          private final String prefix;
+
+          /**
+           * the current entry or null if there are no more words with the prefix
+           */
+          private Entry<String, PostingList> current;
+
+          /**
+           * Creates the iterator and moves to the first word
+           *
+           * @param entries the entries of the shard starting at the prefix
+           * @param prefix  the prefix
+           */
+          private ShardIterator(Iterator<Entry<String, PostingList>> entries, String prefix) {
+               this.entries = entries;
+               this.prefix = prefix;
+               advance();
+          }
+
+          /**
+           * Moves to the next word
+           *
+           * @return false if there are no more words with the prefix
+           */
+          private boolean advance() {
+               current = entries.hasNext() ? entries.next() : null;
+               if (current != null && !current.getKey().startsWith(prefix)) {
+                    current = null;
+               }
+               return current != null;
+          }
+
+          @Override
+          public int compareTo(ShardIterator o) {
+               return current.getKey().compareTo(o.current.getKey());
+          }
+     }
+
+     @Override
+     protected int getDocumentCount() {
+          return documents.size();
+     }
+
+     @Override
+     protected int getDocumentId(String location) {
+          return documents.getId(location);
+     }
+
+     @Override
+     protected String getDocumentLocation(int document) {
+          return documents.getLocation(document);
+     }
+
+     @Override
+     protected int getDocumentWords(int document) {
+          return documents.getCount(document);
+     }
+
+     /**
+      * Counts the times anything has been added, which only changes while
+      * holding the documents lock
+      */
+     @Override
+     public long getVersion() {
+          documentsLock.readLock().lock();
+          try {
+               return version;
+          } finally {
+               documentsLock.readLock().unlock();
+          }
+     }
+
+     @Override
+     public List<QueryEntry> exactSearch(Set<String> queries, int limit, boolean bm25) {
+          lockAll();
+          try {
+               return super.exactSearch(queries, limit, bm25);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public List<QueryEntry> partialSearch(Set<String> queries, int limit, boolean bm25) {
+          lockAll();
+          try {
+               return super.partialSearch(queries, limit, bm25);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public List<QueryEntry> fuzzySearch(Set<String> queries, int distance, int limit, boolean bm25) {
+          lockAll();
+          try {
+               return super.fuzzySearch(queries, distance, limit, bm25);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public List<QueryEntry> phraseSearch(PhraseQuery phrase, int limit) {
+          lockAll();
+          try {
+               return super.phraseSearch(phrase, limit);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public List<QueryEntry> booleanSearch(BooleanQuery query, boolean partial, int limit) {
+          lockAll();
+          try {
+               return super.booleanSearch(query, partial, limit);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public SealedInvertedIndex seal() {
+          lockAll();
+          try {
+               return super.seal();
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public Set<String> getWords() {
+          lockAll();
+          try {
+               TreeSet<String> words = new TreeSet<>();
+               for (TreeMap<String, PostingList> shard : shards) {
+                    words.addAll(shard.keySet());
+               }
+               return Collections.unmodifiableSet(words);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public Set<String> getLocationsOfWord(String word) {
+          lockAll();
+          try {
+               return super.getLocationsOfWord(word);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public Set<Integer> getInstancesOfWordInLocation(String word, String location) {
+          lockAll();
+          try {
+               return super.getInstancesOfWordInLocation(word, location);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public boolean hasWord(String word) {
+          lockAll();
+          try {
+               return super.hasWord(word);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public boolean hasLocation(String word, String location) {
+          lockAll();
+          try {
+               return super.hasLocation(word, location);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public boolean hasPosition(String word, String location, int position) {
+          lockAll();
+          try {
+               return super.hasPosition(word, location, position);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public void writeIndex(Path path) throws IOException {
+          lockAll();
+          try {
+               super.writeIndex(path);
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public String writeIndex() {
+          lockAll();
+          try {
+               return super.writeIndex();
+          } finally {
+               unlockAll();
+          }
+     }
+
+     @Override
+     public Map<String, Integer> getCounts() {
+          documentsLock.readLock().lock();
+          try {
+               return super.getCounts();
+          } finally {
+               documentsLock.readLock().unlock();
+          }
+     }
+
+     @Override
+     public int getCountsInLocation(String location) {
+          documentsLock.readLock().lock();
+          try {
+               return super.getCountsInLocation(location);
+          } finally {
+               documentsLock.readLock().unlock();
+          }
+     }
+
+     @Override
+     public boolean containsFile(String file) {
+          documentsLock.readLock().lock();
+          try {
+               return super.containsFile(file);
+          } finally {
+               documentsLock.readLock().unlock();
+          }
+     }
+
+     @Override
+     public Set<String> getLocations() {
+          documentsLock.readLock().lock();
+          try {
+               return super.getLocations();
+          } finally {
+               documentsLock.readLock().unlock();
+          }
+     }
+
+     @Override
+     public void writeCounts(Path path) throws IOException {
+          documentsLock.readLock().lock();
+          try {
+               super.writeCounts(path);
+          } finally {
+               documentsLock.readLock().unlock();
+          }
+     }
+
+     @Override
+     public String writeCounts() {
+          documentsLock.readLock().lock();
+          try {
+               return super.writeCounts();
+          } finally {
+               documentsLock.readLock().unlock();
+          }
+     }
+}
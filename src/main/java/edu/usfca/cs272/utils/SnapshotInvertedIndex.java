@@ -0,0 +1,187 @@
+package edu.usfca.cs272.utils;
+
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A thread safe inverted index that is searched through published snapshots.
+ * Adds go into a locked batch like in {@link MultiThreadedInvertedIndex}, but
+ * every public read goes to the segments published so far, so searches never
+ * wait on the write lock, even while a large page is being merged.
+ *
+ * <p>
+ * A batch is published after every batch of {@link #addIndex(InvertedIndex)}
+ * calls, and whenever {@link #publish()} is called. Publishing only swaps in an
+ * empty batch and seals the old one into a new segment layered over the ones
+ * before it, which are merged in the background the same way as in
+ * {@link SegmentedInvertedIndex}, so a long crawl doesn't seal everything it
+ * already has again every batch. Reads only see what was added before the last
+ * publish, so the index should be published once more after the last add.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class SnapshotInvertedIndex extends SegmentedInvertedIndex {
+
+     /**
+      * the default number of added indexes between snapshots
+      */
+     public static final int DEFAULT_BATCH = 100;
+
+     /**
+      * the number of added indexes between snapshots
+      */
+     private final int batchSize;
+
+     /**
+      * creates the locks of each batch
+      */
+     private final Supplier<MultiReaderLock> locks;
+
+     /**
+      * the lock for swapping the batch, which adds share and publishing takes
+      * alone
+      */
+     private final MultiReaderLock batchLock;
+
+     /**
+      * the lock for counting the pending indexes
+      */
+     private final Object publishKey;
+
+     /**
+      * the indexes added since the last snapshot
+      */
+     private MultiThreadedInvertedIndex batch;
+
+     /**
+      * the number of indexes added since the last snapshot
+      */
+     private int pending;
+
+     /**
+      * Creates an index that publishes a snapshot after every
+      * {@link #DEFAULT_BATCH} added indexes
+      *
+      * @param workQueue the work queue for the background merges
+      */
+     public SnapshotInvertedIndex(WorkQueue workQueue) {
+          this(workQueue, MultiReaderLock::new, DEFAULT_BATCH);
+     }
+
+     /**
+      * Creates an index
+      *
+      * @param workQueue the work queue for the background merges
+      * @param locks     creates each of the locks
+      * @param batchSize the number of added indexes between snapshots
+      */
+     public SnapshotInvertedIndex(WorkQueue workQueue, Supplier<MultiReaderLock> locks, int batchSize) {
+          this(workQueue, locks, batchSize, true);
+     }
+
+     /**
+      * Creates an index that may only keep frequencies
+      *
+      * @param workQueue the work queue for the background merges
+      * @param locks     creates each of the locks
+      * @param batchSize the number of added indexes between snapshots
+      * @param positions whether to keep positions or only frequencies
+      */
+     public SnapshotInvertedIndex(WorkQueue workQueue, Supplier<MultiReaderLock> locks, int batchSize,
+               boolean positions) {
+          super(workQueue, positions);
+          this.batchSize = Math.max(1, batchSize);
+          this.locks = locks;
+          this.batchLock = locks.get();
+          this.publishKey = new Object();
+          this.batch = newBatch();
+          this.pending = 0;
+     }
+
+     /**
+      * Creates an empty batch. Searches never read a batch, so it doesn't need a
+      * prefix cache.
+      *
+      * @return the batch
+      */
+     private MultiThreadedInvertedIndex newBatch() {
+          return new MultiThreadedInvertedIndex(locks, hasPositions(), false);
+     }
+
+     /**
+      * Adds an index to the batch and publishes the batch if this fills it
+      *
+      * @param otherIndex the other inverted index
+      */
+     @Override
+     public void addIndex(InvertedIndex otherIndex) {
+          boolean full;
+          batchLock.readLock().lock();
+          try {
+               batch.addIndex(otherIndex);
+               synchronized (publishKey) {
+                    full = ++pending >= batchSize;
+               }
+          } finally {
+               batchLock.readLock().unlock();
+          }
+
+          if (full) {
+               publish();
+          }
+     }
+
+     @Override
+     public void addIndex(String word, String location, int index) {
+          batchLock.readLock().lock();
+          try {
+               batch.addIndex(word, location, index);
+          } finally {
+               batchLock.readLock().unlock();
+          }
+     }
+
+     @Override
+     public void addIndex(String word, String location, Set<Integer> indices) {
+          batchLock.readLock().lock();
+          try {
+               batch.addIndex(word, location, indices);
+          } finally {
+               batchLock.readLock().unlock();
+          }
+     }
+
+     /**
+      * Swaps in an empty batch and layers the old one over the earlier snapshots
+      * as a new segment. Adds only wait for the swap, and searches keep using the
+      * old snapshot until the segment is in.
+      */
+     public void publish() {
+          InvertedIndex published;
+          batchLock.writeLock().lock();
+          try {
+               published = batch;
+               batch = newBatch();
+               synchronized (publishKey) {
+                    pending = 0;
+               }
+          } finally {
+               batchLock.writeLock().unlock();
+          }
+
+          super.addIndex(published);
+     }
+
+     /**
+      * Publishes the batch and merges every snapshot into one sealed index
+      *
+      * @return the sealed index
+      */
+     @Override
+     public SealedInvertedIndex seal() {
+          publish();
+          return super.seal();
+     }
+}
@@ -0,0 +1,176 @@
+package edu.usfca.cs272.utils;
+
+import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
+
+/**
+ * A stemmer that is safe to share between threads and remembers the stems of
+ * the words it has seen. Natural text keeps repeating the same few thousand
+ * words, so almost every word is looked up instead of going through the whole
+ * Snowball algorithm, and the words it hasn't seen are stemmed by a
+ * {@link SnowballStemmer} that belongs to the thread, since they can't be
+ * shared.
+ *
+ * <p>
+ * The stems are kept in two generations of at most a fixed number of words
+ * each. New words go in the young one, and once it is full the old one is
+ * dropped and the young one takes its place. A word found in the old
+ * generation is moved back to the young one, so the words that keep coming up
+ * are never dropped and the cache never holds more than twice its capacity.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class StemCache implements Stemmer {
+
+     /**
+      * the default number of words in a generation
+      */
+     public static final int DEFAULT_CAPACITY = 1 << 16;
+
+     /**
+      * the English stem cache shared by building the index and searching it
+      */
+     public static final StemCache SHARED = new StemCache();
+
+     /**
+      * the stemmer of each thread
+      */
+     private final ThreadLocal<SnowballStemmer> stemmers;
+
+     /**
+      * the most words in a generation
+      */
+     private final int capacity;
+
+     /**
+      * the stems of the words seen most recently
+      */
+     private volatile ConcurrentHashMap<String, String> young;
+
+     /**
+      * the stems of the words seen before the young generation started
+      */
+     private volatile ConcurrentHashMap<String, String> old;
+
+     /**
+      * the number of words that were found in the cache
+      */
+     private final LongAdder hits;
+
+     /**
+      * the number of words that had to be stemmed
+      */
+     private final LongAdder misses;
+
+     /**
+      * Creates an English stem cache that keeps {@link #DEFAULT_CAPACITY} words in
+      * a generation
+      */
+     public StemCache() {
+          this(ENGLISH, DEFAULT_CAPACITY);
+     }
+
+     /**
+      * Creates a stem cache
+      *
+      * @param algorithm the Snowball algorithm to stem with
+      * @param capacity  the most words in a generation
+      */
+     public StemCache(ALGORITHM algorithm, int capacity) {
+          this.stemmers = ThreadLocal.withInitial(() -> new SnowballStemmer(algorithm));
+          this.capacity = capacity;
+          this.young = new ConcurrentHashMap<>();
+          this.old = new ConcurrentHashMap<>();
+          this.hits = new LongAdder();
+          this.misses = new LongAdder();
+     }
+
+     @Override
+     public String stem(CharSequence word) {
+          String key = word.toString();
+
+          String stem = young.get(key);
+          if (stem != null) {
+               hits.increment();
+               return stem;
+          }
+
+          stem = old.get(key);
+          if (stem != null) {
+               hits.increment();
+          } else {
+               misses.increment();
+               stem = stemmers.get().stem(key).toString();
+          }
+
+          keep(key, stem);
+          return stem;
+     }
+
+     /**
+      * Keeps the stem of a word in the young generation, starting a new one if it
+      * is full
+      *
+      * @param word the word
+      * @param stem the stem
+      */
+     private void keep(String word, String stem) {
+          ConcurrentHashMap<String, String> current = young;
+          if (current.size() >= capacity) {
+               synchronized (this) {
+                    if (young == current) {
+                         old = current;
+                         young = new ConcurrentHashMap<>();
+                    }
+                    current = young;
+               }
+          }
+          current.put(word, stem);
+     }
+
+     /**
+      * Gets the number of words that were found in the cache
+      *
+      * @return the number of hits
+      */
+     public long getHits() {
+          return hits.sum();
+     }
+
+     /**
+      * Gets the number of words that had to be stemmed
+      *
+      * @return the number of misses
+      */
+     public long getMisses() {
+          return misses.sum();
+     }
+
+     /**
+      * Gets the fraction of words that were found in the cache
+      *
+      * @return the hit rate, or 0 if no words were stemmed
+      */
+     public double getHitRate() {
+          long found = getHits();
+          long total = found + getMisses();
+          return total == 0 ? 0 : (double) found / total;
+     }
+
+     /**
+      * Gets the number of words whose stems are kept
+      *
+      * @return the number of words, counting a word in both generations twice
+      */
+     public int size() {
+          return young.size() + old.size();
+     }
+}
@@ -0,0 +1,446 @@
+package edu.usfca.cs272.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.ObjIntConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * A compact, read-only dictionary of sorted words that numbers each word by
+ * its place in the sort order. Sorted words share long prefixes with the word
+ * before them, so the words are front coded in blocks of {@link #BLOCK_SIZE}:
+ * the first word of each block is kept whole, and every other word only keeps
+ * the length of the prefix it shares with the word before it and the rest of
+ * its characters.
+ *
+ * <pre>
+ * block := word*
+ * word  := shared:length suffixLength:length suffix:char*
+ * </pre>
+ *
+ * Lengths take fifteen bits per char, with the high bit marking that another
+ * char follows. A word is found by a binary search over the first words of the
+ * blocks and decoding at most one block, and every word with a prefix is found
+ * by decoding forward from the first one, so partial searches never look a
+ * word up again.
+ *
+ * <p>
+ * Memory footprint per word (64-bit JVM, compressed oops):
+ * <ul>
+ * <li>{@code String[]}: a 4 byte reference, a 24 byte {@link String} and a 16
+ * byte array header plus its characters, so roughly 50 bytes for a stem.</li>
+ * <li>{@code TermDictionary}: two chars of lengths and two bytes for each
+ * character that isn't shared, plus a whole {@link String} for one word out of
+ * every block, so roughly 12 bytes for a stem.</li>
+ * </ul>
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class TermDictionary implements Iterable<String> {
+
+     /**
+      * the number of words in a block
+      */
+     public static final int BLOCK_SIZE = 16;
+
+     /**
+      * the first word of each block
+      */
+     private final String[] heads;
+
+     /**
+      * the offset of the rest of each block in the chars
+      */
+     private final int[] blocks;
+
+     /**
+      * the front coded words after the first of each block
+      */
+     private final char[] chars;
+
+     /**
+      * the number of words
+      */
+     private final int size;
+
+     /**
+      * Creates a dictionary from its built parts
+      *
+      * @param heads  the first word of each block
+      * @param blocks the offset of the rest of each block
+      * @param chars  the front coded words
+      * @param size   the number of words
+      */
+     private TermDictionary(String[] heads, int[] blocks, char[] chars, int size) {
+          this.heads = heads;
+          this.blocks = blocks;
+          this.chars = chars;
+          this.size = size;
+     }
+
+     /**
+      * Gets the number of words
+      *
+      * @return the number of words
+      */
+     public int size() {
+          return size;
+     }
+
+     /**
+      * Finds the number of a word
+      *
+      * @param word the word
+      * @return the number of the word, or -1 if it isn't in the dictionary
+      */
+     public int find(String word) {
+          Reader reader = seek(word);
+          return reader != null && word.contentEquals(reader.word) ? reader.ordinal : -1;
+     }
+
+     /**
+      * Gets a function that finds the first word that isn't before a target, for
+      * one walk through the words in order. It remembers the last word it found,
+      * so a target in the same block is found by decoding forward from there
+      * instead of searching the blocks again. It shouldn't be shared between
+      * threads.
+      *
+      * @return the function, which returns null if every word is before the
+      *         target
+      */
+     public UnaryOperator<String> walker() {
+          return new UnaryOperator<>() {
+               /**
+                * the reader on the last word found, or null
+                */
+               private Reader reader = null;
+
+               @Override
+               public String apply(String target) {
+                    if (reader != null && reader.inBlock(target) && CharSequence.compare(reader.word, target) <= 0) {
+                         while (CharSequence.compare(reader.word, target) < 0) {
+                              if (!reader.next()) {
+                                   reader = null;
+                                   return null;
+                              }
+                         }
+                    } else {
+                         reader = seek(target);
+                    }
+                    return reader != null ? reader.word.toString() : null;
+               }
+          };
+     }
+
+     /**
+      * Goes through every word that starts with the prefix, in sorted order,
+      * along with its number
+      *
+      * @param prefix the prefix
+      * @param action the action for each word and its number
+      */
+     public void forEachPrefix(String prefix, ObjIntConsumer<String> action) {
+          Reader reader = seek(prefix);
+          if (reader == null) {
+               return;
+          }
+
+          do {
+               if (!startsWith(reader.word, prefix)) {
+                    return;
+               }
+               action.accept(reader.word.toString(), reader.ordinal);
+          } while (reader.next());
+     }
+
+     @Override
+     public Iterator<String> iterator() {
+          return new Iterator<>() {
+               /**
+                * the reader, or null before the first word
+                */
+               private Reader reader = null;
+
+               @Override
+               public boolean hasNext() {
+                    return reader == null ? size > 0 : reader.ordinal + 1 < size;
+               }
+
+               @Override
+               public String next() {
+                    if (!hasNext()) {
+                         throw new NoSuchElementException();
+                    }
+
+                    if (reader == null) {
+                         reader = new Reader(0);
+                    } else {
+                         reader.next();
+                    }
+                    return reader.word.toString();
+               }
+          };
+     }
+
+     /**
+      * Finds the first word that isn't before the target
+      *
+      * @param target the target
+      * @return a reader on that word, or null if every word is before it
+      */
+     private Reader seek(String target) {
+          int block = Arrays.binarySearch(heads, target);
+          if (block >= 0) {
+               return new Reader(block);
+          }
+
+          block = -(block + 1) - 1;
+          if (block < 0) {
+               return size > 0 ? new Reader(0) : null;
+          }
+
+          Reader reader = new Reader(block);
+          while (CharSequence.compare(reader.word, target) < 0) {
+               if (!reader.next()) {
+                    return null;
+               }
+          }
+          return reader;
+     }
+
+     /**
+      * Checks whether a word starts with a prefix without making it a string
+      *
+      * @param word   the word
+      * @param prefix the prefix
+      * @return true if the word starts with the prefix
+      */
+     private static boolean startsWith(CharSequence word, String prefix) {
+          if (word.length() < prefix.length()) {
+               return false;
+          }
+
+          for (int i = 0; i < prefix.length(); i++) {
+               if (word.charAt(i) != prefix.charAt(i)) {
+                    return false;
+               }
+          }
+          return true;
+     }
+
+     /**
+      * Decodes the words in order from the start of a block
+      */
+     private class Reader {
+          /**
+           * the current word
+           */
+          private final StringBuilder word;
+
+          /**
+           * the number of the current word
+           */
+          private int ordinal;
+
+          /**
+           * the offset of the next word in the chars
+           */
+          private int offset;
+
+          /**
+           * Creates a reader on the first word of a block
+           *
+           * @param block the block
+           */
+          private Reader(int block) {
+               word = new StringBuilder(heads[block]);
+               ordinal = block * BLOCK_SIZE;
+               offset = blocks[block];
+          }
+
+          /**
+           * Checks whether a target comes before the first word of the next block,
+           * so the reader reaches the first word that isn't before it without
+           * leaving its block
+           *
+           * @param target the target
+           * @return true if the target comes before the next block, or if this is
+           *         the last block
+           */
+          private boolean inBlock(String target) {
+               int block = ordinal / BLOCK_SIZE + 1;
+               return block >= heads.length || target.compareTo(heads[block]) < 0;
+          }
+
+          /**
+           * Moves to the next word
+           *
+           * @return false if there are no more words
+           */
+          private boolean next() {
+               if (++ordinal >= size) {
+                    return false;
+               }
+
+               if (ordinal % BLOCK_SIZE == 0) {
+                    int block = ordinal / BLOCK_SIZE;
+                    word.setLength(0);
+                    word.append(heads[block]);
+                    offset = blocks[block];
+                    return true;
+               }
+
+               int shared = readLength();
+               int length = readLength();
+               word.setLength(shared);
+               word.append(chars, offset, length);
+               offset += length;
+               return true;
+          }
+
+          /**
+           * Reads a length
+           *
+           * @return the length
+           */
+          private int readLength() {
+               int value = 0;
+               int shift = 0;
+               char next;
+
+               do {
+                    next = chars[offset++];
+                    value |= (next & 0x7FFF) << shift;
+                    shift += 15;
+               } while ((next & 0x8000) != 0);
+
+               return value;
+          }
+     }
+
+     /**
+      * Builds a dictionary from words that are added in sorted order
+      */
+     public static class Builder {
+          /**
+           * the first word of each block
+           */
+          private final List<String> heads;
+
+          /**
+           * the offset of the rest of each block, only the first heads.size() are
+           * used
+           */
+          private int[] blocks;
+
+          /**
+           * the front coded words, only the first length are used
+           */
+          private char[] chars;
+
+          /**
+           * the number of chars used
+           */
+          private int length;
+
+          /**
+           * the number of words added
+           */
+          private int size;
+
+          /**
+           * the last word added
+           */
+          private String last;
+
+          /**
+           * Creates an empty builder
+           */
+          public Builder() {
+               heads = new ArrayList<>();
+               blocks = new int[16];
+               chars = new char[256];
+               length = 0;
+               size = 0;
+               last = null;
+          }
+
+          /**
+           * Adds the next word
+           *
+           * @param word the word, which must come after the last word added
+           * @return this builder
+           * @throws IllegalArgumentException if the word doesn't come after the
+           *                                  last word added
+           */
+          public Builder add(String word) throws IllegalArgumentException {
+               if (last != null && last.compareTo(word) >= 0) {
+                    throw new IllegalArgumentException("Words must be added in sorted order: " + word);
+               }
+
+               if (size % BLOCK_SIZE == 0) {
+                    if (heads.size() == blocks.length) {
+                         blocks = Arrays.copyOf(blocks, blocks.length * 2);
+                    }
+                    blocks[heads.size()] = length;
+                    heads.add(word);
+               } else {
+                    int shared = 0;
+                    int limit = Math.min(last.length(), word.length());
+                    while (shared < limit && last.charAt(shared) == word.charAt(shared)) {
+                         shared++;
+                    }
+
+                    writeLength(shared);
+                    writeLength(word.length() - shared);
+                    grow(word.length() - shared);
+                    word.getChars(shared, word.length(), chars, length);
+                    length += word.length() - shared;
+               }
+
+               last = word;
+               size++;
+               return this;
+          }
+
+          /**
+           * Builds the dictionary of every word added so far
+           *
+           * @return the dictionary
+           */
+          public TermDictionary build() {
+               return new TermDictionary(heads.toArray(new String[0]), Arrays.copyOf(blocks, heads.size()),
+                         Arrays.copyOf(chars, length), size);
+          }
+
+          /**
+           * Writes a length
+           *
+           * @param value the length
+           */
+          private void writeLength(int value) {
+               grow(3);
+               while ((value & ~0x7FFF) != 0) {
+                    chars[length++] = (char) ((value & 0x7FFF) | 0x8000);
+                    value >>>= 15;
+               }
+               chars[length++] = (char) value;
+          }
+
+          /**
+           * Makes sure there is room for more chars
+           *
+           * @param needed the number of chars needed
+           */
+          private void grow(int needed) {
+               if (length + needed > chars.length) {
+                    chars = Arrays.copyOf(chars, Math.max(length + needed, chars.length * 2));
+               }
+          }
+     }
+}
@@ -0,0 +1,258 @@
+package edu.usfca.cs272.utils;
+
+import java.util.Arrays;
+
+/**
+ * Splits text into the same clean words as {@link FileStemmer#parse(String)},
+ * but in one pass over the text and without copying it. Words are read one at
+ * a time into a buffer that is reused for the whole text, and a tokenizer can
+ * be reset and reused for the next text, so reading a file only makes a
+ * {@link String} for each word.
+ *
+ * <p>
+ * Letters are kept and lowercased, whitespace separates words, and everything
+ * else is dropped, just like {@link FileStemmer#clean(String)}. Almost all text
+ * is ASCII, which is handled a char at a time. A word with any other character
+ * in it, which could lose an accent or be a letter of another alphabet, is
+ * cleaned with {@link FileStemmer#clean(String)} on its own, which gives the
+ * same result since normalizing and lowercasing never look past whitespace.
+ * The one exception is a capital sigma right after a letter outside the Basic
+ * Multilingual Plane, where the JDK decides whether it is a final sigma by
+ * looking at the text before the word.
+ *
+ * <p>
+ * A tokenizer can also split every line of a text on its own, which gives the
+ * same words as splitting each line read by {@link java.io.BufferedReader}, so
+ * a file can be split a large chunk of lines at a time.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class Tokenizer {
+
+     /**
+      * whether every line is split on its own
+      */
+     private final boolean lines;
+
+     /**
+      * the text being split
+      */
+     private CharSequence text;
+
+     /**
+      * the offset of the next char to read
+      */
+     private int offset;
+
+     /**
+      * the chars of the current word
+      */
+     private char[] buffer;
+
+     /**
+      * the length of the current word
+      */
+     private int length;
+
+     /**
+      * the current word if it wasn't ASCII, or null
+      */
+     private String cleaned;
+
+     /**
+      * whether a word has been read from the text yet
+      */
+     private boolean started;
+
+     /**
+      * whether the text starts with a space that {@link String#strip()} keeps,
+      * which {@link FileStemmer#split(String)} turns into an empty first word
+      */
+     private boolean leadingSpace;
+
+     /**
+      * whether the first word is held back behind that empty word
+      */
+     private boolean held;
+
+     /**
+      * Creates a tokenizer with no text
+      */
+     public Tokenizer() {
+          this("");
+     }
+
+     /**
+      * Creates a tokenizer for a text
+      *
+      * @param text the text to split
+      */
+     public Tokenizer(CharSequence text) {
+          this(text, false);
+     }
+
+     /**
+      * Creates a tokenizer with no text
+      *
+      * @param lines whether every line is split on its own
+      */
+     public Tokenizer(boolean lines) {
+          this("", lines);
+     }
+
+     /**
+      * Creates a tokenizer for a text
+      *
+      * @param text  the text to split
+      * @param lines whether every line is split on its own
+      */
+     public Tokenizer(CharSequence text, boolean lines) {
+          this.lines = lines;
+          this.buffer = new char[32];
+          reset(text);
+     }
+
+     /**
+      * Starts splitting another text
+      *
+      * @param text the text to split
+      * @return this tokenizer
+      */
+     public Tokenizer reset(CharSequence text) {
+          this.text = text;
+          this.offset = 0;
+          this.length = 0;
+          this.cleaned = null;
+          this.started = false;
+          this.leadingSpace = false;
+          this.held = false;
+          return this;
+     }
+
+     /**
+      * Moves to the next word
+      *
+      * @return false if there are no more words
+      */
+     public boolean next() {
+          if (held) {
+               held = false;
+               return true;
+          }
+
+          if (!read()) {
+               return false;
+          }
+
+          if (!started) {
+               started = true;
+               if (leadingSpace) {
+                    held = true;
+                    return true;
+               }
+          }
+          return true;
+     }
+
+     /**
+      * Gets the current word
+      *
+      * @return the word
+      */
+     public String token() {
+          if (held) {
+               return "";
+          }
+          return cleaned != null ? cleaned : new String(buffer, 0, length);
+     }
+
+     /**
+      * Reads the next word that isn't empty once it is cleaned
+      *
+      * @return false if there are no more words
+      */
+     private boolean read() {
+          int start = -1;
+          boolean ascii = true;
+          length = 0;
+          cleaned = null;
+
+          while (offset < text.length()) {
+               char c = text.charAt(offset);
+
+               if (isSpace(c)) {
+                    if (start >= 0 && finish(start, ascii)) {
+                         return true;
+                    }
+
+                    if (lines && (c == '\n' || c == '\r')) {
+                         started = false;
+                         leadingSpace = false;
+                    } else if (!started && !Character.isWhitespace(c)) {
+                         leadingSpace = true;
+                    }
+                    start = -1;
+                    ascii = true;
+                    length = 0;
+                    cleaned = null;
+               } else {
+                    if (start < 0) {
+                         start = offset;
+                    }
+
+                    if (c >= 'a' && c <= 'z') {
+                         append(c);
+                    } else if (c >= 'A' && c <= 'Z') {
+                         append((char) (c + ('a' - 'A')));
+                    } else if (c >= 0x80) {
+                         ascii = false;
+                    }
+               }
+
+               offset++;
+          }
+
+          return start >= 0 && finish(start, ascii);
+     }
+
+     /**
+      * Finishes the word that started at an offset and ends at the current one
+      *
+      * @param start the offset the word started at
+      * @param ascii whether the word was all ASCII, so the buffer holds it
+      * @return true if the word isn't empty once it is cleaned
+      */
+     private boolean finish(int start, boolean ascii) {
+          if (ascii) {
+               return length > 0;
+          }
+
+          cleaned = FileStemmer.clean(text.subSequence(start, offset).toString());
+          return !cleaned.isEmpty();
+     }
+
+     /**
+      * Adds a char to the current word
+      *
+      * @param c the char
+      */
+     private void append(char c) {
+          if (length == buffer.length) {
+               buffer = Arrays.copyOf(buffer, length * 2);
+          }
+          buffer[length++] = c;
+     }
+
+     /**
+      * Checks whether a char is whitespace the way {@link FileStemmer#SPLIT_REGEX}
+      * sees it, which also counts no-break spaces
+      *
+      * @param c the char
+      * @return true if the char is whitespace
+      */
+     public static boolean isSpace(char c) {
+          return c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x80 && (c == 0x85 || Character.isSpaceChar(c)));
+     }
+}
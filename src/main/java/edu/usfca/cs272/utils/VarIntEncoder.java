@@ -0,0 +1,94 @@
+package edu.usfca.cs272.utils;
+
+import java.util.Arrays;
+
+/**
+ * A growable byte array that non-negative integers are written into as
+ * variable-byte integers: seven bits per byte, lowest bits first, with the high
+ * bit set on every byte except the last
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class VarIntEncoder {
+
+     /**
+      * the bytes, only the first size are used
+      */
+     private byte[] bytes;
+
+     /**
+      * the number of bytes written
+      */
+     private int size;
+
+     /**
+      * Creates an empty encoder
+      */
+     public VarIntEncoder() {
+          bytes = new byte[64];
+          size = 0;
+     }
+
+     /**
+      * Writes a non-negative integer
+      *
+      * @param value the integer
+      */
+     public void write(int value) {
+          grow(5);
+          while ((value & ~0x7F) != 0) {
+               bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+               value >>>= 7;
+          }
+          bytes[size++] = (byte) value;
+     }
+
+     /**
+      * Writes all of the bytes of another encoder
+      *
+      * @param other the other encoder
+      */
+     public void write(VarIntEncoder other) {
+          grow(other.size);
+          System.arraycopy(other.bytes, 0, bytes, size, other.size);
+          size += other.size;
+     }
+
+     /**
+      * Gets the number of bytes written
+      *
+      * @return the number of bytes
+      */
+     public int size() {
+          return size;
+     }
+
+     /**
+      * Empties the encoder so it can be reused
+      */
+     public void clear() {
+          size = 0;
+     }
+
+     /**
+      * Copies the written bytes into a new array
+      *
+      * @return the bytes
+      */
+     public byte[] toArray() {
+          return Arrays.copyOf(bytes, size);
+     }
+
+     /**
+      * Makes sure there is room for more bytes
+      *
+      * @param needed the number of bytes needed
+      */
+     private void grow(int needed) {
+          if (size + needed > bytes.length) {
+               bytes = Arrays.copyOf(bytes, Math.max(size + needed, bytes.length * 2));
+          }
+     }
+}
@@ -1,14 +1,11 @@
 package edu.usfca.cs272.utils;
 
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
-
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashSet;
 import java.util.List;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * Class responsible for downloading webpages and adding them to the invertedindex
@@ -27,7 +24,7 @@ public class WebCrawler {
      /**
       * the thread safe inverted index
       */
-     private final MultiThreadedInvertedIndex invertedIndex;
+     private final InvertedIndex invertedIndex;
 
      /**
       * the places the crawler has visited
@@ -42,10 +39,13 @@ public class WebCrawler {
      /**
       * creates the webcrawler class
       * 
-      * @param invertedIndex the thread safe inverted index
+      * @param invertedIndex the thread safe inverted index, such as a
+      *                      {@link MultiThreadedInvertedIndex},
+      *                      {@link ShardedInvertedIndex} or
+      *                      {@link SegmentedInvertedIndex}
       * @param workQueue the workqueue
       */
-     public WebCrawler(MultiThreadedInvertedIndex invertedIndex, WorkQueue workQueue) {
+     public WebCrawler(InvertedIndex invertedIndex, WorkQueue workQueue) {
           this.invertedIndex = invertedIndex;
           this.workQueue = workQueue;
           this.visitedPages = new HashSet<>();
@@ -147,14 +147,14 @@ public class WebCrawler {
            * @param uri the uri as a string (used for keys)
            */
           private void addHTMLToIndex(String strippedHtml, String uri) {
-               InvertedIndex index = new InvertedIndex();
-               Stemmer stemmer = new SnowballStemmer(ENGLISH);
+               InvertedIndex index = new InvertedIndex(invertedIndex.hasPositions());
+               Stemmer stemmer = StemCache.SHARED;
      
-               String[] parsedLine = FileStemmer.parse(strippedHtml);
+               Tokenizer words = new Tokenizer(strippedHtml);
                int i = 1;
      
-               for (String word : parsedLine) {
-                    index.addIndex(stemmer.stem(word).toString(), uri, i++);
+               while (words.next()) {
+                    index.addIndex(stemmer.stem(words.token()).toString(), uri, i++);
                }
      
                invertedIndex.addIndex(index);
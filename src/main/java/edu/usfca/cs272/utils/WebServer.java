@@ -129,11 +129,20 @@ public class WebServer {
             response.setContentType("text/json");
             PrintWriter out = response.getWriter();
             String query = getParameterValue(request, "query");
+            String limit = getParameterValue(request, "limit");
             System.out.println("API Request: " + query);
-            if (query != null) {
-                JsonWriter.toJsonString(queryHandler.getQueryResults(query), out);
-            } else {
+            if (query == null) {
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST, "No query provided");
+            } else {
+                try {
+                    int max = limit == null ? 0 : Math.max(0, Integer.parseInt(limit));
+                    JsonWriter.toJsonString(queryHandler.getQueryResults(query, max), out);
+                } catch (NumberFormatException e) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, "The limit must be a number");
+                } catch (UnsupportedOperationException e) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                            "Phrase searches need positions, which this index doesn't keep");
+                }
             }
         }
     }
@@ -0,0 +1,448 @@
+package edu.usfca.cs272.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
+
+/**
+ * Checks how boolean query lines are parsed and the keys they get, and checks
+ * boolean searches against working out every document's matches one at a
+ * time, on seeded random documents where some words are in almost every
+ * document and others in very few, so the intersections skip far ahead.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class BooleanQueryTest {
+
+     /**
+      * the words of the documents and queries, which are their own stems, from
+      * the most to the least common, and some of which are a prefix of another
+      */
+     private static final String[] WORDS = { "a", "ab", "b", "c", "ca", "d", "e" };
+
+     /**
+      * the chance out of 1000 that each word of {@link #WORDS} is the next word
+      * of a document
+      */
+     private static final int[] WEIGHTS = { 500, 150, 150, 100, 60, 30, 10 };
+
+     /**
+      * the number of random queries to check
+      */
+     private static final int QUERIES = 2000;
+
+     /**
+      * the random documents
+      */
+     private final List<String[]> documents;
+
+     /**
+      * Makes up the random documents
+      */
+     public BooleanQueryTest() {
+          Random random = new Random(272);
+          documents = new ArrayList<>();
+          for (int i = 0; i < 300; i++) {
+               String[] document = new String[1 + random.nextInt(12)];
+               for (int position = 0; position < document.length; position++) {
+                    int pick = random.nextInt(1000);
+                    int word = 0;
+                    while (pick >= WEIGHTS[word]) {
+                         pick -= WEIGHTS[word++];
+                    }
+                    document[position] = WORDS[word];
+               }
+               documents.add(document);
+          }
+     }
+
+     /**
+      * Adds the documents to an index, with positions starting at 1
+      *
+      * @return the index
+      */
+     private InvertedIndex makeIndex() {
+          InvertedIndex index = new InvertedIndex();
+          for (int i = 0; i < documents.size(); i++) {
+               String[] document = documents.get(i);
+               for (int position = 0; position < document.length; position++) {
+                    index.addIndex(document[position], location(i), position + 1);
+               }
+          }
+          return index;
+     }
+
+     /**
+      * Gets the location of a document, numbered so they sort like their ids
+      *
+      * @param document the document
+      * @return the location
+      */
+     private static String location(int document) {
+          return String.format("document%03d", document);
+     }
+
+     /**
+      * Parses a query line
+      *
+      * @param line the line
+      * @return the key of the query, or null if the line isn't a boolean query
+      */
+     private static String key(String line) {
+          BooleanQuery query = BooleanQuery.parse(line, StemCache.SHARED);
+          return query != null ? query.toString() : null;
+     }
+
+     /**
+      * A query the test builds on its own, with the matches of each document
+      * worked out directly
+      */
+     private static class Expression {
+          /**
+           * the word, or null for an operator
+           */
+          private final String word;
+
+          /**
+           * AND, OR or NOT, or null for a word
+           */
+          private final String operator;
+
+          /**
+           * the parts of an operator
+           */
+          private final List<Expression> children;
+
+          /**
+           * Creates a part of a query
+           *
+           * @param word     the word, or null for an operator
+           * @param operator the operator, or null for a word
+           * @param children the parts of an operator
+           */
+          private Expression(String word, String operator, List<Expression> children) {
+               this.word = word;
+               this.operator = operator;
+               this.children = children;
+          }
+
+          /**
+           * Makes up a random query
+           *
+           * @param random the random numbers
+           * @param depth  the most levels of operators
+           * @return the query
+           */
+          private static Expression random(Random random, int depth) {
+               if (depth == 0 || random.nextInt(3) == 0) {
+                    return new Expression(WORDS[random.nextInt(WORDS.length)], null, null);
+               }
+
+               String operator = List.of("AND", "AND", "OR", "NOT").get(random.nextInt(4));
+               List<Expression> children = new ArrayList<>();
+               int size = operator.equals("NOT") ? 1 : 2 + random.nextInt(3);
+               for (int i = 0; i < size; i++) {
+                    children.add(random(random, depth - 1));
+               }
+               return new Expression(null, operator, children);
+          }
+
+          /**
+           * Counts how many times a word matches in a document
+           *
+           * @param document the words of the document
+           * @param partial  whether the word also matches the words it is a prefix
+           *                 of
+           * @return the count
+           */
+          private int count(String[] document, boolean partial) {
+               int count = 0;
+               for (String other : document) {
+                    if (partial ? other.startsWith(word) : other.equals(word)) {
+                         count++;
+                    }
+               }
+               return count;
+          }
+
+          /**
+           * Checks whether a document matches
+           *
+           * @param document the words of the document
+           * @param partial  whether words also match the words they are a prefix of
+           * @return true if it matches
+           */
+          private boolean matches(String[] document, boolean partial) {
+               if (word != null) {
+                    return count(document, partial) > 0;
+               }
+
+               return switch (operator) {
+                    case "NOT" -> !children.get(0).matches(document, partial);
+                    case "AND" -> children.stream().allMatch(child -> child.matches(document, partial));
+                    default -> children.stream().anyMatch(child -> child.matches(document, partial));
+               };
+          }
+
+          /**
+           * Counts the matched words in a document that matches, which are the
+           * words of every part that matches it, leaving out the parts under a
+           * {@code NOT}
+           *
+           * @param document the words of the document
+           * @param partial  whether words also match the words they are a prefix of
+           * @return the number of matched words
+           */
+          private int frequency(String[] document, boolean partial) {
+               if (word != null) {
+                    return count(document, partial);
+               }
+
+               int frequency = 0;
+               if (!operator.equals("NOT")) {
+                    for (Expression child : children) {
+                         if (child.matches(document, partial)) {
+                              frequency += child.frequency(document, partial);
+                         }
+                    }
+               }
+               return frequency;
+          }
+
+          /**
+           * Writes the query with parentheses around every operator
+           */
+          @Override
+          public String toString() {
+               if (word != null) {
+                    return word;
+               }
+
+               if (operator.equals("NOT")) {
+                    return "NOT " + children.get(0);
+               }
+
+               List<String> parts = new ArrayList<>();
+               for (Expression child : children) {
+                    parts.add(child.toString());
+               }
+               return "(" + String.join(" " + operator + " ", parts) + ")";
+          }
+     }
+
+     /**
+      * Gets the number of matched words of each document in search results
+      *
+      * @param results the results
+      * @return the number of matched words by location
+      */
+     private static Map<String, Integer> getCounts(List<QueryEntry> results) {
+          Map<String, Integer> counts = new TreeMap<>();
+          for (QueryEntry entry : results) {
+               counts.put(entry.getFile(), (int) Math.round(entry.getScore() * entry.getTotalWords()));
+          }
+          return counts;
+     }
+
+     /**
+      * Checks that parsing gives the same key for lines that mean the same and
+      * only keeps the parentheses that are needed
+      */
+     @Test
+     public void testKeys() {
+          assertEquals("a OR b AND NOT c", key("a OR b AND NOT c"));
+          assertEquals("a OR b AND NOT c", key("a OR (b AND (NOT c))"));
+          assertEquals("(a OR b) AND NOT c", key("(a OR b) AND NOT c"));
+          assertEquals("a OR b OR c", key("(a OR b) OR c"));
+          assertEquals("a OR b OR c", key("a b OR c"));
+          assertEquals("a AND b", key("(a) AND ((b))"));
+          assertEquals("NOT (a OR b)", key("NOT (a OR b)"));
+          assertEquals("NOT NOT a", key("NOT NOT a"));
+          assertEquals("apple AND banana", key("Apples AND bananas"));
+          assertEquals("a AND b OR c", key("(a AND b) OR c"));
+          assertEquals("a AND (b OR c)", key("a AND (b OR c)"));
+     }
+
+     /**
+      * Checks that {@code NOT} binds tighter than {@code AND}, which binds
+      * tighter than {@code OR}
+      */
+     @Test
+     public void testPrecedence() {
+          InvertedIndex index = makeIndex();
+          Set<String> expected = new TreeSet<>();
+          for (int i = 0; i < documents.size(); i++) {
+               List<String> words = List.of(documents.get(i));
+               if (words.contains("a") || (words.contains("b") && !words.contains("c"))) {
+                    expected.add(location(i));
+               }
+          }
+
+          BooleanQuery query = BooleanQuery.parse("a OR b AND NOT c", StemCache.SHARED);
+          assertEquals(expected, getCounts(query.search(index, false, 0)).keySet());
+     }
+
+     /**
+      * Checks that lines without operators or parentheses, or without any words,
+      * aren't boolean queries
+      */
+     @Test
+     public void testNotBoolean() {
+          assertNull(key("a b c"));
+          assertNull(key("a and b or not c"));
+          assertNull(key("ANDROID ORANGE NOTE"));
+          assertNull(key("AND OR NOT"));
+          assertNull(key("( )"));
+          assertNull(key("NOT"));
+          assertNull(key("(( ... ))"));
+     }
+
+     /**
+      * Checks that a missing closing parenthesis is added at the end and an
+      * extra one is left out
+      */
+     @Test
+     public void testParentheses() {
+          assertEquals("a OR b", key("(a OR b"));
+          assertEquals("a AND (b OR c)", key("a AND (b OR c"));
+          assertEquals("a AND (b OR NOT c)", key("a AND (b OR (NOT c"));
+          assertEquals("a OR b", key("a) OR b"));
+          assertEquals("a AND b OR c", key("(a AND b)) OR c"));
+     }
+
+     /**
+      * Checks that operators without anything to work on are left out
+      */
+     @Test
+     public void testDanglingOperators() {
+          assertEquals("a", key("a AND"));
+          assertEquals("a", key("OR a"));
+          assertEquals("a", key("a NOT"));
+          assertEquals("a", key("a AND NOT"));
+          assertEquals("a OR b", key("a AND OR b"));
+          assertEquals("a AND b", key("a AND AND b"));
+          assertEquals("a AND b", key("a AND (NOT) AND b"));
+          assertEquals("a OR b", key("a OR OR b OR"));
+          assertEquals("a", key("(a AND) NOT"));
+     }
+
+     /**
+      * Checks that a query that can only match with {@code NOT} matches every
+      * document without the word, and that the search leaves them all out since
+      * they have no matched words
+      */
+     @Test
+     public void testNotOnly() {
+          InvertedIndex index = makeIndex();
+          Set<String> without = new TreeSet<>();
+          for (int i = 0; i < documents.size(); i++) {
+               if (!List.of(documents.get(i)).contains("d")) {
+                    without.add(location(i));
+               }
+          }
+
+          for (String line : List.of("NOT d", "NOT d AND NOT NOT NOT d", "NOT (d AND d)")) {
+               BooleanQuery query = BooleanQuery.parse(line, StemCache.SHARED);
+               PostingsCursor cursor = query.cursor(index, false);
+               Set<String> matched = new TreeSet<>();
+               while (cursor.next()) {
+                    matched.add(location(cursor.document()));
+                    assertEquals(0, cursor.frequency(), line);
+               }
+               assertEquals(without, matched, line);
+               assertEquals(List.of(), query.search(index, false, 0), line);
+               assertEquals(List.of(), query.search(index.seal(), false, 5), line);
+          }
+
+          assertEquals(List.of(), BooleanQuery.parse("NOT NOT d", StemCache.SHARED).search(index, false, 0));
+     }
+
+     /**
+      * Checks the documents that several words all have against intersecting the
+      * locations of each word, including words with no documents at all
+      */
+     @Test
+     public void testIntersection() {
+          InvertedIndex index = makeIndex();
+          SealedInvertedIndex sealed = index.seal();
+          Random random = new Random(273);
+          List<String> words = new ArrayList<>(List.of(WORDS));
+          words.add("missing");
+
+          for (int i = 0; i < QUERIES; i++) {
+               List<String> parts = new ArrayList<>();
+               Set<String> expected = null;
+               int size = 2 + random.nextInt(4);
+               for (int j = 0; j < size; j++) {
+                    String word = words.get(random.nextInt(words.size()));
+                    parts.add(word);
+                    Set<String> locations = new TreeSet<>(index.getLocationsOfWord(word));
+                    if (expected == null) {
+                         expected = locations;
+                    } else {
+                         expected.retainAll(locations);
+                    }
+               }
+
+               String line = String.join(" AND ", parts);
+               BooleanQuery query = BooleanQuery.parse(line, StemCache.SHARED);
+               assertEquals(expected, getCounts(query.search(index, false, 0)).keySet(), line);
+               assertEquals(expected, getCounts(query.search(sealed, false, 0)).keySet(), line);
+          }
+     }
+
+     /**
+      * Checks random queries, with and without partial matches and limits,
+      * against working out the matches of every document one at a time
+      */
+     @Test
+     public void testRandomQueries() {
+          InvertedIndex index = makeIndex();
+          SealedInvertedIndex sealed = index.seal();
+          Random random = new Random(274);
+
+          for (int i = 0; i < QUERIES; i++) {
+               Expression expression = Expression.random(random, 3);
+               boolean partial = random.nextBoolean();
+               String line = expression.toString();
+               BooleanQuery query = BooleanQuery.parse(line, StemCache.SHARED);
+
+               Map<String, Integer> expected = new TreeMap<>();
+               for (int j = 0; j < documents.size(); j++) {
+                    String[] document = documents.get(j);
+                    if (expression.matches(document, partial)) {
+                         int frequency = expression.frequency(document, partial);
+                         if (frequency > 0) {
+                              expected.put(location(j), frequency);
+                         }
+                    }
+               }
+
+               if (expression.word != null) {
+                    assertNull(query, line);
+                    continue;
+               }
+
+               List<QueryEntry> results = query.search(index, partial, 0);
+               assertEquals(expected, getCounts(results), line + " partial " + partial);
+               assertEquals(results.toString(), query.search(sealed, partial, 0).toString(), line);
+
+               int limit = 1 + random.nextInt(10);
+               assertEquals(results.subList(0, Math.min(limit, results.size())).toString(),
+                         query.search(sealed, partial, limit).toString(), line + " limit " + limit);
+          }
+     }
+}
@@ -0,0 +1,195 @@
+package edu.usfca.cs272.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a sealed index written with
+ * {@link SealedInvertedIndex#writeBinary(Path)} reads and maps back to the same
+ * index, and that files with the wrong magic number, another version or
+ * missing bytes are rejected with an {@link IOException}.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class IndexFileTest {
+
+     /**
+      * the number of different words in the made up index
+      */
+     private static final int VOCABULARY = 200;
+
+     /**
+      * Makes up a sealed index of a few seeded random documents
+      *
+      * @param positions whether positions are kept or only frequencies
+      * @return the sealed index
+      */
+     private static SealedInvertedIndex makeIndex(boolean positions) {
+          Random random = new Random(272);
+          InvertedIndex index = new InvertedIndex(positions);
+          for (int document = 0; document < 50; document++) {
+               int words = 1 + random.nextInt(500);
+               for (int position = 1; position <= words; position++) {
+                    index.addIndex("word" + random.nextInt(VOCABULARY), "document" + document, position);
+               }
+          }
+          return index.seal();
+     }
+
+     /**
+      * Checks that two indexes have the same words, counts and search results
+      *
+      * @param expected the index that was written
+      * @param actual   the index that was read back
+      */
+     private static void assertSameIndex(SealedInvertedIndex expected, SealedInvertedIndex actual) {
+          assertEquals(expected.hasPositions(), actual.hasPositions());
+          assertEquals(expected.writeCounts(), actual.writeCounts());
+          if (expected.hasPositions()) {
+               assertEquals(expected.writeIndex(), actual.writeIndex());
+          }
+
+          for (int word = 0; word <= VOCABULARY; word++) {
+               Set<String> queries = Set.of("word" + word);
+               assertEquals(expected.exactSearch(queries).toString(), actual.exactSearch(queries).toString());
+               assertEquals(expected.exactSearch(queries, 5, true).toString(),
+                         actual.exactSearch(queries, 5, true).toString());
+          }
+     }
+
+     /**
+      * Writes an index and checks that reading and mapping it give it back
+      *
+      * @param index the index
+      * @throws IOException if the file can't be written or read
+      */
+     private static void assertRoundTrip(SealedInvertedIndex index) throws IOException {
+          Path file = Files.createTempFile("index", ".bin");
+          try {
+               index.writeBinary(file);
+               assertSameIndex(index, SealedInvertedIndex.readBinary(file));
+               assertSameIndex(index, SealedInvertedIndex.mapBinary(file));
+          } finally {
+               Files.delete(file);
+          }
+     }
+
+     /**
+      * Checks an index with positions
+      *
+      * @throws IOException if the file can't be written or read
+      */
+     @Test
+     public void testPositions() throws IOException {
+          assertRoundTrip(makeIndex(true));
+     }
+
+     /**
+      * Checks an index that only keeps frequencies
+      *
+      * @throws IOException if the file can't be written or read
+      */
+     @Test
+     public void testFrequencies() throws IOException {
+          assertRoundTrip(makeIndex(false));
+     }
+
+     /**
+      * Checks an empty index
+      *
+      * @throws IOException if the file can't be written or read
+      */
+     @Test
+     public void testEmpty() throws IOException {
+          assertRoundTrip(new InvertedIndex().seal());
+     }
+
+     /**
+      * Writes an index, changes its bytes and checks that reading and mapping
+      * them fail
+      *
+      * @param bytes the bytes to write instead of the index
+      * @throws IOException if the file can't be written
+      */
+     private static void assertRejected(byte[] bytes) throws IOException {
+          Path file = Files.createTempFile("index", ".bin");
+          try {
+               Files.write(file, bytes);
+               assertThrows(IOException.class, () -> SealedInvertedIndex.readBinary(file));
+               assertThrows(IOException.class, () -> SealedInvertedIndex.mapBinary(file));
+          } finally {
+               Files.delete(file);
+          }
+     }
+
+     /**
+      * Gets the bytes of an index file
+      *
+      * @return the bytes
+      * @throws IOException if the file can't be written or read
+      */
+     private static byte[] getBytes() throws IOException {
+          Path file = Files.createTempFile("index", ".bin");
+          try {
+               makeIndex(true).writeBinary(file);
+               return Files.readAllBytes(file);
+          } finally {
+               Files.delete(file);
+          }
+     }
+
+     /**
+      * Checks that a file with the wrong magic number is rejected
+      *
+      * @throws IOException if the file can't be written
+      */
+     @Test
+     public void testBadMagic() throws IOException {
+          byte[] bytes = getBytes();
+          assertEquals(IndexFile.MAGIC, ByteBuffer.wrap(bytes).getInt(0));
+          ByteBuffer.wrap(bytes).putInt(0, IndexFile.MAGIC + 1);
+          assertRejected(bytes);
+     }
+
+     /**
+      * Checks that a file of another version is rejected
+      *
+      * @throws IOException if the file can't be written
+      */
+     @Test
+     public void testBadVersion() throws IOException {
+          byte[] bytes = getBytes();
+          assertEquals(IndexFile.VERSION, ByteBuffer.wrap(bytes).getInt(Integer.BYTES));
+          ByteBuffer.wrap(bytes).putInt(Integer.BYTES, IndexFile.VERSION + 1);
+          assertRejected(bytes);
+     }
+
+     /**
+      * Checks that a file cut short anywhere is rejected
+      *
+      * @throws IOException if the file can't be written
+      */
+     @Test
+     public void testTruncated() throws IOException {
+          byte[] bytes = getBytes();
+          assertTrue(bytes.length > 100);
+          int step = Math.max(1, bytes.length / 50);
+          for (int length = 0; length < bytes.length; length += length < 100 ? 1 : step) {
+               assertRejected(Arrays.copyOf(bytes, length));
+          }
+          assertRejected(Arrays.copyOf(bytes, bytes.length - 1));
+     }
+}
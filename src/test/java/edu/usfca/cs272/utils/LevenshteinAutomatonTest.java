@@ -0,0 +1,240 @@
+package edu.usfca.cs272.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the words the automaton finds in seeded random dictionaries against
+ * working out the distance to every word, where swapping two letters next to
+ * each other is one edit, and checks that the walk skips most of a large
+ * dictionary.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class LevenshteinAutomatonTest {
+
+     /**
+      * the letters of the random words, with a few outside of ASCII
+      */
+     private static final String LETTERS = "abcdeéöжω語";
+
+     /**
+      * the number of random query words to check for each distance
+      */
+     private static final int QUERIES = 300;
+
+     /**
+      * Works out the edit distance between two words by filling in the whole
+      * table, where swapping two letters next to each other is one edit and no
+      * letter is edited twice
+      *
+      * @param a the first word
+      * @param b the second word
+      * @return the edit distance
+      */
+     private static int distance(String a, String b) {
+          int[][] table = new int[a.length() + 1][b.length() + 1];
+          for (int i = 0; i <= a.length(); i++) {
+               for (int j = 0; j <= b.length(); j++) {
+                    if (i == 0 || j == 0) {
+                         table[i][j] = i + j;
+                         continue;
+                    }
+
+                    int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    table[i][j] = Math.min(table[i - 1][j - 1] + cost, Math.min(table[i - 1][j], table[i][j - 1]) + 1);
+
+                    if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                         table[i][j] = Math.min(table[i][j], table[i - 2][j - 2] + 1);
+                    }
+               }
+          }
+          return table[a.length()][b.length()];
+     }
+
+     /**
+      * Makes up a random word
+      *
+      * @param random the random numbers
+      * @param most   the most letters
+      * @return the word
+      */
+     private static String randomWord(Random random, int most) {
+          StringBuilder word = new StringBuilder();
+          int length = 1 + random.nextInt(most);
+          for (int i = 0; i < length; i++) {
+               word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+          }
+          return word.toString();
+     }
+
+     /**
+      * Makes a random edit to a word: inserting, deleting or changing a letter,
+      * or swapping two letters next to each other
+      *
+      * @param random the random numbers
+      * @param word   the word
+      * @return the edited word
+      */
+     private static String randomEdit(Random random, String word) {
+          StringBuilder edited = new StringBuilder(word);
+          int at = random.nextInt(word.length() + 1);
+          char letter = LETTERS.charAt(random.nextInt(LETTERS.length()));
+
+          switch (random.nextInt(4)) {
+               case 0 -> edited.insert(at, letter);
+               case 1 -> {
+                    if (at < edited.length()) {
+                         edited.deleteCharAt(at);
+                    }
+               }
+               case 2 -> {
+                    if (at < edited.length()) {
+                         edited.setCharAt(at, letter);
+                    }
+               }
+               default -> {
+                    if (at + 1 < edited.length()) {
+                         edited.setCharAt(at, word.charAt(at + 1));
+                         edited.setCharAt(at + 1, word.charAt(at));
+                    }
+               }
+          }
+
+          return edited.toString();
+     }
+
+     /**
+      * Makes a dictionary of random words and of words a few random edits away
+      * from the query words, so there are matches at every distance
+      *
+      * @param random  the random numbers
+      * @param queries the query words
+      * @param size    the number of random words
+      * @return the dictionary
+      */
+     private static TreeSet<String> makeDictionary(Random random, List<String> queries, int size) {
+          TreeSet<String> dictionary = new TreeSet<>();
+          while (dictionary.size() < size) {
+               dictionary.add(randomWord(random, 9));
+          }
+
+          for (String query : queries) {
+               for (int i = 0; i < 20; i++) {
+                    String word = query;
+                    for (int edits = 1 + random.nextInt(3); edits > 0; edits--) {
+                         word = randomEdit(random, word);
+                    }
+                    if (!word.isEmpty()) {
+                         dictionary.add(word);
+                    }
+               }
+          }
+
+          return dictionary;
+     }
+
+     /**
+      * Checks the matches of random query words within a distance against
+      * working out the distance to every word of the dictionary
+      *
+      * @param distance the distance
+      */
+     private static void assertSameMatches(int distance) {
+          Random random = new Random(272 + distance);
+          List<String> queries = new ArrayList<>();
+          for (int i = 0; i < QUERIES; i++) {
+               queries.add(randomWord(random, 8));
+          }
+          TreeSet<String> dictionary = makeDictionary(random, queries, 3000);
+
+          for (String query : queries) {
+               List<String> expected = new ArrayList<>();
+               for (String word : dictionary) {
+                    if (distance(query, word) <= distance) {
+                         expected.add(word);
+                    }
+               }
+
+               List<String> actual = new ArrayList<>();
+               new LevenshteinAutomaton(query, distance).forEachMatch(dictionary::ceiling, actual::add);
+               assertEquals(expected, actual, query + " within " + distance);
+          }
+     }
+
+     /**
+      * Checks a distance of one edit
+      */
+     @Test
+     public void testOneEdit() {
+          assertSameMatches(1);
+     }
+
+     /**
+      * Checks a distance of two edits
+      */
+     @Test
+     public void testTwoEdits() {
+          assertSameMatches(2);
+     }
+
+     /**
+      * Checks a few swaps of letters next to each other by hand, which are one
+      * edit instead of two
+      */
+     @Test
+     public void testSwaps() {
+          TreeSet<String> dictionary = new TreeSet<>(List.of("abcd", "bacd", "acbd", "abdc", "badc", "cabd", "éaжb",
+                    "aéжb", "aébж", "ωa語", "aω語"));
+          List<String> actual = new ArrayList<>();
+          new LevenshteinAutomaton("abcd", 1).forEachMatch(dictionary::ceiling, actual::add);
+          assertEquals(List.of("abcd", "abdc", "acbd", "bacd"), actual);
+
+          actual.clear();
+          new LevenshteinAutomaton("abcd", 2).forEachMatch(dictionary::ceiling, actual::add);
+          assertEquals(List.of("abcd", "abdc", "acbd", "bacd", "badc", "cabd"), actual);
+
+          actual.clear();
+          new LevenshteinAutomaton("aéжb", 1).forEachMatch(dictionary::ceiling, actual::add);
+          assertEquals(List.of("aébж", "aéжb", "éaжb"), actual);
+
+          actual.clear();
+          new LevenshteinAutomaton("aω語", 1).forEachMatch(dictionary::ceiling, actual::add);
+          assertEquals(List.of("aω語", "ωa語"), actual);
+     }
+
+     /**
+      * Checks that the walk jumps over the words that can't match instead of
+      * reading every word of a large dictionary
+      */
+     @Test
+     public void testSkips() {
+          Random random = new Random(306);
+          List<String> queries = new ArrayList<>();
+          for (int i = 0; i < 50; i++) {
+               queries.add(randomWord(random, 8));
+          }
+          TreeSet<String> dictionary = makeDictionary(random, queries, 100000);
+
+          for (String query : queries) {
+               int[] calls = { 0 };
+               UnaryOperator<String> ceiling = word -> {
+                    calls[0]++;
+                    return dictionary.ceiling(word);
+               };
+
+               new LevenshteinAutomaton(query, 1).forEachMatch(ceiling, word -> {});
+               assertTrue(calls[0] < dictionary.size() / 100, () -> query + " read " + calls[0] + " words");
+          }
+     }
+}
@@ -0,0 +1,193 @@
+package edu.usfca.cs272.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that splitting text files into ranges of lines that are read at the
+ * same time indexes every word at the same position as reading each file on
+ * its own, and that a range that can't be read fails filling the index instead
+ * of leaving the file out.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class MultiThreadedFileHandlerTest {
+
+     /**
+      * the size of the ranges the files are split into, much smaller than
+      * {@link MultiThreadedFileHandler#SPLIT_SIZE} so small files are split into
+      * many ranges
+      */
+     private static final long SPLIT_SIZE = 1 << 12;
+
+     /**
+      * Writes seeded random text files of many short and a few very long lines
+      *
+      * @param directory the directory to write them in
+      * @throws IOException if a file can't be written
+      */
+     private static void writeFiles(Path directory) throws IOException {
+          Random random = new Random(272);
+          String[] words = { "apple", "Banana", "cherries", "dog's", "x-ray", "42", "café", "ΟΔΟΣ", "hello" };
+          String[] breaks = { " ", " ", " ", "\t", "\n", "\r\n", "\r", "\n\n" };
+
+          for (int file = 0; file < 6; file++) {
+               StringBuilder text = new StringBuilder();
+               int size = random.nextInt(40000);
+               while (text.length() < size) {
+                    text.append(words[random.nextInt(words.length)]);
+                    text.append(random.nextInt(500) == 0 ? " word".repeat(3000) : breaks[random.nextInt(breaks.length)]);
+               }
+               Files.writeString(directory.resolve("file" + file + ".txt"), text, StandardCharsets.UTF_8);
+          }
+     }
+
+     /**
+      * Deletes a directory of files
+      *
+      * @param directory the directory
+      * @throws IOException if a file can't be deleted
+      */
+     private static void delete(Path directory) throws IOException {
+          try (var files = Files.list(directory)) {
+               for (Path file : files.toList()) {
+                    Files.delete(file);
+               }
+          }
+          Files.delete(directory);
+     }
+
+     /**
+      * Checks that splitting the files gives the same index as reading them one
+      * at a time
+      *
+      * @param positions whether positions are kept or only frequencies
+      * @param reduce    whether local indexes are reduced in pairs
+      * @throws IOException if a file can't be written or read
+      */
+     private static void assertSameIndex(boolean positions, boolean reduce) throws IOException {
+          Path directory = Files.createTempDirectory("split");
+          WorkQueue workQueue = new WorkQueue(3);
+          try {
+               writeFiles(directory);
+
+               InvertedIndex expected = new InvertedIndex(positions);
+               new FileHandler(expected).fillInvertedIndex(directory);
+
+               InvertedIndex actual = new MultiThreadedInvertedIndex(MultiReaderLock::new, positions);
+               MultiThreadedFileHandler handler = reduce ? new ReducingFileHandler(actual, workQueue, SPLIT_SIZE)
+                         : new MultiThreadedFileHandler(actual, workQueue, SPLIT_SIZE);
+               handler.fillInvertedIndex(directory);
+
+               assertEquals(expected.writeCounts(), actual.writeCounts());
+               if (positions) {
+                    assertEquals(expected.writeIndex(), actual.writeIndex());
+               } else {
+                    assertEquals(expected.seal().writeCounts(), actual.seal().writeCounts());
+                    for (String word : new String[] { "appl", "banana", "word", "x", "οδοσ" }) {
+                         assertEquals(expected.exactSearch(Set.of(word)).toString(),
+                                   actual.exactSearch(Set.of(word)).toString(), word);
+                    }
+               }
+          } finally {
+               workQueue.join();
+               delete(directory);
+          }
+     }
+
+     /**
+      * Checks split files with positions
+      *
+      * @throws IOException if a file can't be written or read
+      */
+     @Test
+     public void testPositions() throws IOException {
+          assertSameIndex(true, false);
+     }
+
+     /**
+      * Checks split files that only keep frequencies
+      *
+      * @throws IOException if a file can't be written or read
+      */
+     @Test
+     public void testFrequencies() throws IOException {
+          assertSameIndex(false, false);
+     }
+
+     /**
+      * Checks split files whose local indexes are reduced in pairs
+      *
+      * @throws IOException if a file can't be written or read
+      */
+     @Test
+     public void testReduce() throws IOException {
+          assertSameIndex(true, true);
+     }
+
+     /**
+      * Checks that a file whose ranges can't be read once it was split makes
+      * filling the index throw
+      *
+      * @throws Exception if the file can't be written or the threads are
+      *                   interrupted
+      */
+     @Test
+     public void testFailedRange() throws Exception {
+          Path directory = Files.createTempDirectory("split");
+          Path file = directory.resolve("file.txt");
+          WorkQueue workQueue = new WorkQueue(1);
+          CountDownLatch blocked = new CountDownLatch(1);
+          try {
+               Files.writeString(file, "apple banana\n".repeat(2000), StandardCharsets.UTF_8);
+
+               // holds up the only worker so the ranges are queued but not read yet
+               workQueue.execute(() -> {
+                    try {
+                         blocked.await();
+                    } catch (InterruptedException e) {
+                         Thread.currentThread().interrupt();
+                    }
+               });
+
+               InvertedIndex index = new MultiThreadedInvertedIndex();
+               MultiThreadedFileHandler handler = new MultiThreadedFileHandler(index, workQueue, SPLIT_SIZE);
+               IOException[] failure = new IOException[1];
+               Thread filling = new Thread(() -> {
+                    failure[0] = assertThrows(IOException.class, () -> handler.fillInvertedIndex(directory));
+               });
+               filling.start();
+
+               // the ranges are all queued once filling waits for the work queue
+               while (filling.getState() != Thread.State.WAITING && filling.isAlive()) {
+                    Thread.sleep(1);
+               }
+               assertTrue(workQueue.getPending() > 2);
+               Files.delete(file);
+               blocked.countDown();
+               filling.join();
+
+               assertTrue(failure[0] != null && failure[0].getMessage().contains(file + " could only be indexed"),
+                         String.valueOf(failure[0]));
+               assertEquals(0, index.getCounts().size());
+          } finally {
+               blocked.countDown();
+               workQueue.join();
+               Files.deleteIfExists(file);
+               Files.delete(directory);
+          }
+     }
+}
@@ -0,0 +1,234 @@
+package edu.usfca.cs272.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
+
+/**
+ * Checks quoted phrase and proximity searches against counting the matches
+ * word by word, on seeded random documents of a few words so that phrases
+ * often repeat a word, and checks that both query handlers skip a phrase line
+ * the same way when the index only keeps frequencies.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class PhraseQueryTest {
+
+     /**
+      * the words of the documents and phrases, which are their own stems
+      */
+     private static final String[] WORDS = { "a", "b", "c", "d" };
+
+     /**
+      * the number of random phrases to check
+      */
+     private static final int PHRASES = 3000;
+
+     /**
+      * the random documents
+      */
+     private final List<String[]> documents;
+
+     /**
+      * Makes up the random documents
+      */
+     public PhraseQueryTest() {
+          Random random = new Random(272);
+          documents = new ArrayList<>();
+          for (int i = 0; i < 200; i++) {
+               String[] document = new String[1 + random.nextInt(40)];
+               for (int position = 0; position < document.length; position++) {
+                    document[position] = WORDS[random.nextInt(WORDS.length)];
+               }
+               documents.add(document);
+          }
+     }
+
+     /**
+      * Adds the documents to an index, with positions starting at 1
+      *
+      * @param index the index
+      * @return the index
+      */
+     private InvertedIndex addDocuments(InvertedIndex index) {
+          for (int i = 0; i < documents.size(); i++) {
+               String[] document = documents.get(i);
+               for (int position = 0; position < document.length; position++) {
+                    index.addIndex(document[position], "document" + i, position + 1);
+               }
+          }
+          return index;
+     }
+
+     /**
+      * Counts the positions of the first word of a phrase where the phrase
+      * matches, by looking at every word. With a distance, every word of the
+      * phrase needs a position of its own within the distance of the first word's
+      * position, which counts for the first word.
+      *
+      * @param document the words of the document
+      * @param phrase   the words of the phrase
+      * @param distance the distance, or 0 for an exact phrase
+      * @return the number of matches
+      */
+     private static int countMatches(String[] document, List<String> phrase, int distance) {
+          int occurrences = 0;
+
+          for (int first = 0; first < document.length; first++) {
+               if (!document[first].equals(phrase.get(0))) {
+                    continue;
+               }
+
+               boolean found = true;
+               for (int i = 0; i < phrase.size() && found; i++) {
+                    String word = phrase.get(i);
+                    if (distance == 0) {
+                         found = first + i < document.length && document[first + i].equals(word);
+                    } else {
+                         int have = 0;
+                         for (int position = Math.max(0, first - distance); position <= first + distance
+                                   && position < document.length; position++) {
+                              if (document[position].equals(word)) {
+                                   have++;
+                              }
+                         }
+                         found = have >= Collections.frequency(phrase, word);
+                    }
+               }
+
+               if (found) {
+                    occurrences++;
+               }
+          }
+
+          return occurrences;
+     }
+
+     /**
+      * Checks random phrases with and without distances and limits against
+      * counting every match
+      *
+      * @param index the index to search
+      */
+     private void assertSameMatches(InvertedIndex index) {
+          Random random = new Random(273);
+          for (int i = 0; i < PHRASES; i++) {
+               List<String> words = new ArrayList<>();
+               int size = 1 + random.nextInt(4);
+               for (int j = 0; j < size; j++) {
+                    words.add(WORDS[random.nextInt(WORDS.length)]);
+               }
+               PhraseQuery phrase = new PhraseQuery(words, random.nextInt(4));
+
+               Map<String, Integer> expected = new TreeMap<>();
+               for (int j = 0; j < documents.size(); j++) {
+                    int occurrences = countMatches(documents.get(j), words, phrase.getDistance());
+                    if (occurrences > 0) {
+                         expected.put("document" + j, occurrences * words.size());
+                    }
+               }
+
+               List<QueryEntry> results = index.phraseSearch(phrase, 0);
+               Map<String, Integer> actual = new TreeMap<>();
+               for (QueryEntry entry : results) {
+                    actual.put(entry.getFile(), (int) Math.round(entry.getScore() * entry.getTotalWords()));
+               }
+               assertEquals(expected, actual, phrase.toString());
+
+               List<QueryEntry> sorted = new ArrayList<>(results);
+               Collections.sort(sorted);
+               assertEquals(sorted, results, phrase.toString());
+
+               int limit = 1 + random.nextInt(10);
+               assertEquals(results.subList(0, Math.min(limit, results.size())).toString(),
+                         index.phraseSearch(phrase, limit).toString(), phrase + " limit " + limit);
+          }
+     }
+
+     /**
+      * Checks an index that is still being built
+      */
+     @Test
+     public void testIndex() {
+          assertSameMatches(addDocuments(new InvertedIndex()));
+     }
+
+     /**
+      * Checks a sealed index
+      */
+     @Test
+     public void testSealed() {
+          assertSameMatches(addDocuments(new InvertedIndex()).seal());
+     }
+
+     /**
+      * Checks a few phrases that repeat a word by hand
+      */
+     @Test
+     public void testRepeatedWords() {
+          InvertedIndex index = new InvertedIndex();
+          String[] words = { "a", "b", "a", "c", "c", "a" };
+          for (int position = 0; position < words.length; position++) {
+               index.addIndex(words[position], "document", position + 1);
+          }
+
+          Map<String, Integer> expected = Map.of("'a b a'", 1, "'a a'~2", 2, "'a a'~1", 0, "'c c'", 1, "'c c c'~5", 0,
+                    "'a c c'~2", 2, "'b a a'~4", 1);
+          Map<String, Integer> actual = new HashMap<>();
+          for (String key : expected.keySet()) {
+               String[] parts = key.split("~");
+               List<String> phrase = List.of(parts[0].replace("'", "").split(" "));
+               int distance = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+               List<QueryEntry> results = index.phraseSearch(new PhraseQuery(phrase, distance), 0);
+               actual.put(key, results.isEmpty() ? 0
+                         : (int) Math.round(results.get(0).getScore() * results.get(0).getTotalWords()) / phrase.size());
+          }
+          assertEquals(expected, actual);
+     }
+
+     /**
+      * Checks that both query handlers skip a phrase line when the index only
+      * keeps frequencies, and still search the lines after it
+      */
+     @Test
+     public void testFrequencies() {
+          InvertedIndex index = addDocuments(new InvertedIndex(false));
+          List<String> lines = List.of("a b", "\"a b\"", "c AND d", "\"b c\"~2", "d");
+
+          QueryHandler single = new QueryHandler(index, false, false, 0, true);
+          for (String line : lines) {
+               single.handleQueries(line);
+          }
+
+          WorkQueue workQueue = new WorkQueue(2);
+          try {
+               MultiThreadedQueryHandler multi = new MultiThreadedQueryHandler(index, false, workQueue,
+                         MultiReaderLock::new, false, 0, true);
+               for (String line : lines) {
+                    multi.handleQueries(line);
+               }
+               workQueue.finish();
+
+               assertEquals(3, single.getQueryLines().size());
+               assertEquals(single.getQueryLines(), multi.getQueryLines());
+               assertEquals(single.toString(), multi.toString());
+          } finally {
+               workQueue.join();
+          }
+
+          assertThrows(UnsupportedOperationException.class, () -> single.getQueryResults("\"a b\"", 10));
+     }
+}
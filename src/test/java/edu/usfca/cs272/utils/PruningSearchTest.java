@@ -0,0 +1,138 @@
+package edu.usfca.cs272.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
+
+/**
+ * Checks that searching for only the best results, which skips blocks of
+ * postings that can't make the cut, gives exactly the first results of
+ * searching every match. Pruning is only used by the sealed and segmented
+ * indexes, so both are checked, scoring by matches over total words and with
+ * BM25.
+ *
+ * <p>
+ * The index is made of seeded random documents of very different lengths with
+ * Zipf distributed words, so common words span many blocks of
+ * {@link SealedInvertedIndex#BLOCK_SIZE} postings, rare words span one, and
+ * plenty of results tie on score.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class PruningSearchTest {
+
+     /**
+      * the number of documents in the index
+      */
+     private static final int DOCUMENTS = 3000;
+
+     /**
+      * the number of different words
+      */
+     private static final int VOCABULARY = 5000;
+
+     /**
+      * the number of random queries to check for each index and scoring
+      */
+     private static final int QUERIES = 300;
+
+     /**
+      * the most results a query asks for
+      */
+     private static final int LIMIT = 30;
+
+     /**
+      * Adds the random documents to an index
+      *
+      * @param index the index to add to
+      */
+     private static void addDocuments(InvertedIndex index) {
+          Random random = new Random(272);
+          for (int document = 0; document < DOCUMENTS; document++) {
+               InvertedIndex local = new InvertedIndex();
+               String location = "document" + document;
+               int words = 1 + (int) Math.pow(random.nextInt(60), 2);
+               for (int position = 1; position <= words; position++) {
+                    local.addIndex(zipfWord(random), location, position);
+               }
+               index.addIndex(local);
+          }
+     }
+
+     /**
+      * Picks a random word, where the word of rank r is picked about 1/r as often
+      * as the most common one
+      *
+      * @param random the random number generator
+      * @return the word
+      */
+     private static String zipfWord(Random random) {
+          int rank = (int) Math.pow(VOCABULARY + 1, random.nextDouble());
+          return "word" + Math.min(rank, VOCABULARY);
+     }
+
+     /**
+      * Checks random queries with every limit against the full results
+      *
+      * @param index the index to search
+      * @param bm25  whether to score with BM25
+      */
+     private static void assertSameResults(InvertedIndex index, boolean bm25) {
+          Random random = new Random(bm25 ? 273 : 274);
+          for (int i = 0; i < QUERIES; i++) {
+               Set<String> queries = new LinkedHashSet<>();
+               int words = 1 + random.nextInt(5);
+               for (int j = 0; j < words; j++) {
+                    queries.add(random.nextInt(10) == 0 ? "missing" + j : zipfWord(random));
+               }
+
+               int limit = 1 + random.nextInt(LIMIT);
+               List<QueryEntry> all = index.exactSearch(queries, 0, bm25);
+               List<QueryEntry> best = index.exactSearch(queries, limit, bm25);
+
+               assertEquals(all.subList(0, Math.min(limit, all.size())).toString(), best.toString(),
+                         queries + " limit " + limit + (bm25 ? " bm25" : ""));
+          }
+     }
+
+     /**
+      * Checks the sealed index
+      */
+     @Test
+     public void testSealed() {
+          InvertedIndex index = new InvertedIndex();
+          addDocuments(index);
+          SealedInvertedIndex sealed = index.seal();
+
+          assertSameResults(sealed, false);
+          assertSameResults(sealed, true);
+     }
+
+     /**
+      * Checks the segmented index, where the best results of every segment are
+      * combined
+      */
+     @Test
+     public void testSegmented() {
+          WorkQueue workQueue = new WorkQueue(2);
+          SegmentedInvertedIndex index = new SegmentedInvertedIndex(workQueue);
+          try {
+               addDocuments(index);
+               workQueue.finish();
+
+               assertSameResults(index, false);
+               assertSameResults(index, true);
+          } finally {
+               workQueue.join();
+          }
+     }
+}
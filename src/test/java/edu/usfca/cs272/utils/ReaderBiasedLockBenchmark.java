@@ -0,0 +1,126 @@
+package edu.usfca.cs272.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Compares how many read locks per second threads can take and release on a
+ * {@link MultiReaderLock} and on a {@link ReaderBiasedLock} at 1, 2, 4, 8 and
+ * 16 threads, with no writer and with one writer that takes the write lock
+ * every millisecond, like a server that is searched while pages are added.
+ *
+ * <p>
+ * Readers only get in each other's way with as many cores as threads, so the
+ * number of cores is printed with the results.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class ReaderBiasedLockBenchmark {
+
+     /**
+      * the reader thread counts to compare
+      */
+     private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+     /**
+      * how long each run lasts in milliseconds
+      */
+     private static final int MILLIS = 1000;
+
+     /**
+      * what the readers saw, kept so their reads aren't optimized away
+      */
+     private static volatile int sink;
+
+     /**
+      * Counts the read locks taken by reader threads in one run
+      *
+      * @param locks   creates the lock
+      * @param threads the number of reader threads
+      * @param writer  whether a writer takes the write lock every millisecond
+      * @return the read locks taken per second
+      * @throws InterruptedException if interrupted while waiting for the threads
+      */
+     private static double measure(Supplier<MultiReaderLock> locks, int threads, boolean writer)
+               throws InterruptedException {
+          MultiReaderLock lock = locks.get();
+          AtomicBoolean running = new AtomicBoolean(true);
+          LongAdder reads = new LongAdder();
+          int[] shared = new int[1];
+          List<Thread> workers = new ArrayList<>();
+
+          for (int i = 0; i < threads; i++) {
+               workers.add(new Thread(() -> {
+                    long count = 0;
+                    int seen = 0;
+                    while (running.get()) {
+                         lock.readLock().lock();
+                         try {
+                              seen += shared[0];
+                         } finally {
+                              lock.readLock().unlock();
+                         }
+                         count++;
+                    }
+                    reads.add(count);
+                    sink = seen;
+               }));
+          }
+
+          if (writer) {
+               workers.add(new Thread(() -> {
+                    while (running.get()) {
+                         lock.writeLock().lock();
+                         try {
+                              shared[0]++;
+                         } finally {
+                              lock.writeLock().unlock();
+                         }
+                         try {
+                              Thread.sleep(1);
+                         } catch (InterruptedException e) {
+                              Thread.currentThread().interrupt();
+                              return;
+                         }
+                    }
+               }));
+          }
+
+          long start = System.nanoTime();
+          workers.forEach(Thread::start);
+          Thread.sleep(MILLIS);
+          running.set(false);
+          for (Thread worker : workers) {
+               worker.join();
+          }
+          return reads.sum() / ((System.nanoTime() - start) / 1e9);
+     }
+
+     /**
+      * Prints the read locks per second of each lock at each thread count
+      *
+      * @param args unused
+      * @throws InterruptedException if interrupted while waiting for the threads
+      */
+     public static void main(String[] args) throws InterruptedException {
+          System.out.printf("%d cores, millions of read locks per second%n", Runtime.getRuntime().availableProcessors());
+          System.out.printf("%8s %14s %14s %14s %14s%n", "threads", "multi", "biased", "multi+writer", "biased+writer");
+
+          // warms up both locks before measuring
+          measure(MultiReaderLock::new, 2, true);
+          measure(ReaderBiasedLock::new, 2, true);
+
+          for (int threads : THREADS) {
+               System.out.printf("%8d %14.1f %14.1f %14.1f %14.1f%n", threads,
+                         measure(MultiReaderLock::new, threads, false) / 1e6,
+                         measure(ReaderBiasedLock::new, threads, false) / 1e6,
+                         measure(MultiReaderLock::new, threads, true) / 1e6,
+                         measure(ReaderBiasedLock::new, threads, true) / 1e6);
+          }
+     }
+}
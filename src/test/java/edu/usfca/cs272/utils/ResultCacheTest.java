@@ -0,0 +1,139 @@
+package edu.usfca.cs272.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import edu.usfca.cs272.utils.InvertedIndex.QueryEntry;
+
+/**
+ * Checks that identical searches that miss the cache at the same time only
+ * search the index once, and that they all get the exception a failed search
+ * threw.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class ResultCacheTest {
+
+     /**
+      * the number of identical searches at the same time
+      */
+     private static final int SEARCHES = 8;
+
+     /**
+      * Runs identical searches from several threads. The first search is held
+      * until every other one is waiting on it, so they all miss at the same time.
+      *
+      * @param cache   the cache
+      * @param limit   the limit of every search
+      * @param results the results or exception of each search
+      * @param search  searches the index, which is only let go once the other
+      *                searches are waiting
+      * @return the number of times the index was searched
+      * @throws InterruptedException if interrupted while waiting
+      */
+     private static int searchAtOnce(ResultCache cache, int limit, List<Object> results,
+               Supplier<List<QueryEntry>> search) throws InterruptedException {
+          AtomicInteger searched = new AtomicInteger();
+          CountDownLatch release = new CountDownLatch(1);
+          WorkQueue workQueue = new WorkQueue(SEARCHES);
+
+          try {
+               for (int i = 0; i < SEARCHES; i++) {
+                    workQueue.execute(() -> {
+                         Object result;
+                         try {
+                              result = cache.get("key", limit, () -> {
+                                   searched.incrementAndGet();
+                                   try {
+                                        release.await();
+                                   } catch (InterruptedException e) {
+                                        Thread.currentThread().interrupt();
+                                   }
+                                   return search.get();
+                              });
+                         } catch (RuntimeException e) {
+                              result = e;
+                         }
+                         results.add(result);
+                    });
+               }
+
+               long start = System.nanoTime();
+               while (cache.getCoalesced() < SEARCHES - 1 && System.nanoTime() - start < 10_000_000_000L) {
+                    Thread.sleep(1);
+               }
+               release.countDown();
+               workQueue.finish();
+          } finally {
+               workQueue.shutdown();
+          }
+
+          return searched.get();
+     }
+
+     /**
+      * Checks that identical searches at the same time search the index once and
+      * all get the same results
+      *
+      * @throws InterruptedException if interrupted while waiting
+      */
+     @Test
+     public void testCoalesced() throws InterruptedException {
+          ResultCache cache = new ResultCache(new InvertedIndex());
+          List<QueryEntry> entries = List.of();
+          List<Object> results = Collections.synchronizedList(new ArrayList<>());
+
+          assertEquals(1, searchAtOnce(cache, 0, results, () -> entries));
+          assertEquals(1, cache.getMisses());
+          assertEquals(SEARCHES - 1, cache.getCoalesced());
+          assertEquals(0, cache.getHits());
+          assertEquals(SEARCHES, results.size());
+          for (Object result : results) {
+               assertEquals(entries, result);
+          }
+
+          cache.get("key", 5, () -> {
+               throw new AssertionError("searched again");
+          });
+          assertEquals(1, cache.getHits());
+          assertEquals(1, cache.size());
+     }
+
+     /**
+      * Checks that every search waiting on a search that failed gets the same
+      * exception, and not one wrapped by the future it waited on, and that the
+      * failed search isn't kept
+      *
+      * @throws InterruptedException if interrupted while waiting
+      */
+     @Test
+     public void testFailed() throws InterruptedException {
+          ResultCache cache = new ResultCache(new InvertedIndex());
+          UnsupportedOperationException failure = new UnsupportedOperationException("failed");
+          List<Object> results = Collections.synchronizedList(new ArrayList<>());
+
+          assertEquals(1, searchAtOnce(cache, 10, results, () -> {
+               throw failure;
+          }));
+          assertEquals(SEARCHES - 1, cache.getCoalesced());
+          assertEquals(SEARCHES, results.size());
+          for (Object result : results) {
+               assertSame(failure, result);
+          }
+
+          assertEquals(0, cache.size());
+          assertEquals(List.of(), cache.get("key", 10, List::of));
+          assertEquals(2, cache.getMisses());
+     }
+}
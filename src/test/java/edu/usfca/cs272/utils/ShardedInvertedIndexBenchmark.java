@@ -0,0 +1,119 @@
+package edu.usfca.cs272.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares how fast workers can add local indexes to a
+ * {@link MultiThreadedInvertedIndex} and to a {@link ShardedInvertedIndex} at
+ * 1, 4, 8 and 16 threads. Every worker adds the index of one made up document
+ * of Zipf distributed words, like {@link MultiThreadedFileHandler} does for
+ * every file.
+ *
+ * <p>
+ * The speedup of the sharded index can only show up with as many cores as
+ * threads, so the number of cores is printed with the results.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class ShardedInvertedIndexBenchmark {
+
+     /**
+      * the thread counts to compare
+      */
+     private static final int[] THREADS = { 1, 4, 8, 16 };
+
+     /**
+      * the number of documents added in a run
+      */
+     private static final int DOCUMENTS = 2000;
+
+     /**
+      * the number of words in a document
+      */
+     private static final int WORDS = 2000;
+
+     /**
+      * the number of different words
+      */
+     private static final int VOCABULARY = 50000;
+
+     /**
+      * the number of runs of each index, of which the fastest is kept
+      */
+     private static final int RUNS = 5;
+
+     /**
+      * Makes the local index of every document
+      *
+      * @param random the random number generator
+      * @return the local indexes
+      */
+     private static List<InvertedIndex> makeDocuments(Random random) {
+          double[] weights = new double[VOCABULARY];
+          double total = 0;
+          for (int i = 0; i < VOCABULARY; i++) {
+               total += 1.0 / (i + 1);
+               weights[i] = total;
+          }
+
+          List<InvertedIndex> documents = new ArrayList<>();
+          for (int document = 0; document < DOCUMENTS; document++) {
+               InvertedIndex local = new InvertedIndex();
+               String location = "document" + document;
+               for (int position = 1; position <= WORDS; position++) {
+                    int word = Arrays.binarySearch(weights, random.nextDouble() * total);
+                    local.addIndex("w" + (word < 0 ? -word - 1 : word), location, position);
+               }
+               documents.add(local);
+          }
+          return documents;
+     }
+
+     /**
+      * Adds every document to a new index with a number of workers
+      *
+      * @param documents the local indexes
+      * @param threads   the number of workers
+      * @param index     creates the index
+      * @return the documents added per second of the fastest run
+      */
+     private static double measure(List<InvertedIndex> documents, int threads, Supplier<InvertedIndex> index) {
+          long best = Long.MAX_VALUE;
+          for (int run = 0; run < RUNS; run++) {
+               InvertedIndex invertedIndex = index.get();
+               WorkQueue workQueue = new WorkQueue(threads);
+               long start = System.nanoTime();
+               for (InvertedIndex local : documents) {
+                    workQueue.execute(() -> invertedIndex.addIndex(local));
+               }
+               workQueue.finish();
+               best = Math.min(best, System.nanoTime() - start);
+               workQueue.join();
+          }
+          return documents.size() / (best / 1e9);
+     }
+
+     /**
+      * Prints the documents added per second by each index at each thread count
+      *
+      * @param args unused
+      */
+     public static void main(String[] args) {
+          List<InvertedIndex> documents = makeDocuments(new Random(272));
+          System.out.printf("%d documents of %d words, %d cores%n", DOCUMENTS, WORDS,
+                    Runtime.getRuntime().availableProcessors());
+          System.out.printf("%8s %16s %16s%n", "threads", "multithreaded", "sharded");
+
+          for (int threads : THREADS) {
+               double single = measure(documents, threads, MultiThreadedInvertedIndex::new);
+               double sharded = measure(documents, threads, ShardedInvertedIndex::new);
+               System.out.printf("%8d %14.0f/s %14.0f/s%n", threads, single, sharded);
+          }
+     }
+}
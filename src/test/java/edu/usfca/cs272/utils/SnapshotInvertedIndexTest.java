@@ -0,0 +1,139 @@
+package edu.usfca.cs272.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that publishing a snapshot index batch by batch gives the same index
+ * as adding everything to one index, and that reads only see what was
+ * published.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class SnapshotInvertedIndexTest {
+
+     /**
+      * the words of the random pages
+      */
+     private static final String[] WORDS = { "apple", "banana", "cherry", "dog", "egg", "fig", "grape" };
+
+     /**
+      * Makes seeded random pages, some of which have the same location as an
+      * earlier page so they are merged with a page from another batch. An added
+      * index may keep the positions of the index it was given, so each index
+      * that pages are added to gets pages of its own.
+      *
+      * @param seed  the seed of the random numbers
+      * @param pages the number of pages
+      * @return the local index of each page
+      */
+     private static List<InvertedIndex> makePages(long seed, int pages) {
+          Random random = new Random(seed);
+          List<InvertedIndex> locals = new ArrayList<>();
+
+          for (int page = 0; page < pages; page++) {
+               InvertedIndex local = new InvertedIndex();
+               String location = "page" + (random.nextInt(5) == 0 ? random.nextInt(page + 1) : page);
+               int start = random.nextInt(3) * 1000 + 1;
+               for (int i = 0; i < random.nextInt(30) + 1; i++) {
+                    local.addIndex(WORDS[random.nextInt(WORDS.length)], location, start + i);
+               }
+               locals.add(local);
+          }
+
+          return locals;
+     }
+
+     /**
+      * Checks that two indexes have the same words, positions, counts and
+      * search results
+      *
+      * @param expected the expected index
+      * @param actual   the actual index
+      */
+     private static void assertSameIndex(InvertedIndex expected, InvertedIndex actual) {
+          assertEquals(expected.writeIndex(), actual.writeIndex());
+          assertEquals(expected.writeCounts(), actual.writeCounts());
+          assertEquals(expected.search(Set.of("apple", "fig"), false, 0, false).toString(),
+                    actual.search(Set.of("apple", "fig"), false, 0, false).toString());
+          assertEquals(expected.search(Set.of("gra", "d"), true, 0, true).toString(),
+                    actual.search(Set.of("gra", "d"), true, 0, true).toString());
+     }
+
+     /**
+      * Checks that reads only see full batches until the index is published
+      * again, and then see everything
+      */
+     @Test
+     public void testBatches() {
+          WorkQueue workQueue = new WorkQueue(2);
+          try {
+               List<InvertedIndex> pages = makePages(272, 200);
+               List<InvertedIndex> copies = makePages(272, 200);
+               List<InvertedIndex> batches = makePages(272, 200);
+               SnapshotInvertedIndex snapshots = new SnapshotInvertedIndex(workQueue, MultiReaderLock::new, 3);
+               InvertedIndex expected = new InvertedIndex();
+               InvertedIndex published = new InvertedIndex();
+
+               for (int page = 0; page < pages.size(); page++) {
+                    snapshots.addIndex(pages.get(page));
+                    expected.addIndex(copies.get(page));
+
+                    if (page % 3 == 2) {
+                         for (int added = page - 2; added <= page; added++) {
+                              published.addIndex(batches.get(added));
+                         }
+                    }
+
+                    assertEquals(published.writeCounts(), snapshots.writeCounts(), "page " + page);
+               }
+
+               snapshots.publish();
+               workQueue.finish();
+               assertSameIndex(expected, snapshots);
+               assertSameIndex(expected, snapshots.seal());
+               assertTrue(snapshots.getSegmentCount() < pages.size() / 3 / SegmentedInvertedIndex.MERGE_FACTOR * 2,
+                         () -> snapshots.getSegmentCount() + " segments");
+          } finally {
+               workQueue.shutdown();
+          }
+     }
+
+     /**
+      * Checks that pages added from several threads end up the same as adding
+      * them one at a time
+      */
+     @Test
+     public void testThreads() {
+          WorkQueue workQueue = new WorkQueue(4);
+          try {
+               List<InvertedIndex> pages = makePages(306, 500);
+               SnapshotInvertedIndex snapshots = new SnapshotInvertedIndex(workQueue, MultiReaderLock::new, 7);
+               InvertedIndex expected = new InvertedIndex();
+
+               for (InvertedIndex page : makePages(306, 500)) {
+                    expected.addIndex(page);
+               }
+
+               for (InvertedIndex page : pages) {
+                    workQueue.execute(() -> snapshots.addIndex(page));
+               }
+
+               workQueue.finish();
+               snapshots.publish();
+               workQueue.finish();
+               assertSameIndex(expected, snapshots);
+          } finally {
+               workQueue.shutdown();
+          }
+     }
+}
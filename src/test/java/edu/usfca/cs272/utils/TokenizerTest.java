@@ -0,0 +1,210 @@
+package edu.usfca.cs272.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link Tokenizer} splits text into exactly the words of
+ * {@link FileStemmer#parse(String)}, and that {@link FileHandler} reading a
+ * file a chunk at a time indexes the same words at the same positions as
+ * parsing it line by line.
+ *
+ * <p>
+ * The random texts mix ASCII with accents, other alphabets, no-break and other
+ * Unicode spaces, and every kind of line break. A corpus of text files is
+ * checked too if the {@code corpus} system property, or {@code input/text} in
+ * the working directory, is a directory.
+ *
+ * @author Ben Kamin
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Spring 2024
+ */
+public class TokenizerTest {
+
+     /**
+      * the pieces random texts are made of
+      */
+     private static final String[] PIECES = { "a", "Z", "hello", "World", "don't", "x-ray", "42", "3.14", " ", "  ",
+               "\t", "\n", "\r", "\r\n", "\u000B", "\f", " ", "\u0085", " ", " ", "　", "​",
+               "café", "Ångström", "naïve", "é", "ß", "Straße", "İ", "ΣΊΣΥΦΟΣ", "ΟΔΟΣ", "καλημέρα", "Привет",
+               "東京", "ﬁ", "Ⅻ", "²", "½", "!", "?", ".", "—", "­", "﻿" };
+
+     /**
+      * the number of random texts to check
+      */
+     private static final int TEXTS = 20000;
+
+     /**
+      * Makes a random text out of the pieces
+      *
+      * @param random the random number generator
+      * @return the text
+      */
+     private static String makeText(Random random) {
+          StringBuilder text = new StringBuilder();
+          int pieces = random.nextInt(40);
+          for (int i = 0; i < pieces; i++) {
+               text.append(PIECES[random.nextInt(PIECES.length)]);
+          }
+          return text.toString();
+     }
+
+     /**
+      * Splits a text with a tokenizer
+      *
+      * @param text  the text
+      * @param lines whether every line is split on its own
+      * @return the words
+      */
+     private static List<String> tokenize(String text, boolean lines) {
+          List<String> words = new ArrayList<>();
+          Tokenizer tokenizer = new Tokenizer(text, lines);
+          while (tokenizer.next()) {
+               words.add(tokenizer.token());
+          }
+          return words;
+     }
+
+     /**
+      * Parses every line of a text read by {@link BufferedReader} on its own
+      *
+      * @param text the text
+      * @return the words
+      * @throws IOException never
+      */
+     private static List<String> parseLines(String text) throws IOException {
+          List<String> words = new ArrayList<>();
+          try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+               String line;
+               while ((line = reader.readLine()) != null) {
+                    words.addAll(Arrays.asList(FileStemmer.parse(line)));
+               }
+          }
+          return words;
+     }
+
+     /**
+      * Checks random texts split as one text
+      */
+     @Test
+     public void testRandomText() {
+          Random random = new Random(272);
+          for (int i = 0; i < TEXTS; i++) {
+               String text = makeText(random);
+               assertEquals(Arrays.asList(FileStemmer.parse(text)), tokenize(text, false), text);
+          }
+     }
+
+     /**
+      * Checks random texts split line by line
+      *
+      * @throws IOException never
+      */
+     @Test
+     public void testRandomLines() throws IOException {
+          Random random = new Random(273);
+          for (int i = 0; i < TEXTS; i++) {
+               String text = makeText(random);
+               assertEquals(parseLines(text), tokenize(text, true), text);
+          }
+     }
+
+     /**
+      * Checks that reading random files a chunk at a time indexes the same words
+      * at the same positions as parsing and stemming them line by line, with
+      * lines that are longer than a chunk
+      *
+      * @throws IOException if a file can't be written
+      */
+     @Test
+     public void testRandomFiles() throws IOException {
+          Random random = new Random(274);
+          Path file = Files.createTempFile("tokenizer", ".txt");
+          try {
+               for (int i = 0; i < 8; i++) {
+                    StringBuilder text = new StringBuilder();
+                    while (text.length() < FileHandler.CHUNK_SIZE * 2) {
+                         text.append(makeText(random));
+                         if (random.nextInt(50) == 0) {
+                              text.append("word ".repeat(FileHandler.CHUNK_SIZE / 4));
+                         }
+                    }
+                    Files.writeString(file, text, StandardCharsets.UTF_8);
+                    assertSameIndex(file);
+               }
+          } finally {
+               Files.delete(file);
+          }
+     }
+
+     /**
+      * Checks every file of the corpus split as one text and line by line, and
+      * read by {@link FileHandler}
+      *
+      * @throws IOException if the corpus can't be read
+      */
+     @Test
+     public void testCorpus() throws IOException {
+          Path corpus = Path.of(System.getProperty("corpus", "input/text"));
+          assumeTrue(Files.isDirectory(corpus), "no corpus at " + corpus);
+
+          List<Path> files;
+          try (Stream<Path> walk = Files.walk(corpus)) {
+               files = walk.filter(Files::isRegularFile).sorted().toList();
+          }
+
+          for (Path file : files) {
+               String text;
+               try {
+                    text = Files.readString(file, StandardCharsets.UTF_8);
+               } catch (IOException e) {
+                    continue;
+               }
+
+               assertEquals(Arrays.asList(FileStemmer.parse(text)), tokenize(text, false), file.toString());
+               assertEquals(parseLines(text), tokenize(text, true), file.toString());
+               assertSameIndex(file);
+          }
+     }
+
+     /**
+      * Checks that {@link FileHandler} indexes a file like parsing and stemming it
+      * line by line
+      *
+      * @param file the file
+      * @throws IOException if the file can't be read
+      */
+     private static void assertSameIndex(Path file) throws IOException {
+          InvertedIndex expected = new InvertedIndex();
+          String location = file.toString();
+          int position = 1;
+          try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+               String line;
+               while ((line = reader.readLine()) != null) {
+                    for (String word : FileStemmer.parse(line)) {
+                         expected.addIndex(StemCache.SHARED.stem(word).toString(), location, position++);
+                    }
+               }
+          }
+
+          InvertedIndex actual = new InvertedIndex();
+          FileHandler.handleFile(file, actual);
+
+          assertEquals(expected.writeCounts(), actual.writeCounts(), location);
+          assertEquals(expected.writeIndex(), actual.writeIndex(), location);
+     }
+}